@@ -3,7 +3,10 @@ package org.sonatype.m2e.mavenarchiver;
 import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.util.Map;
 import java.util.Properties;
+import java.util.jar.Attributes;
+import java.util.jar.Manifest;
 
 import org.codehaus.plexus.util.IOUtil;
 import org.eclipse.core.resources.IFile;
@@ -12,6 +15,7 @@ import org.eclipse.core.resources.IncrementalProjectBuilder;
 import org.eclipse.core.runtime.CoreException;
 import org.eclipse.core.runtime.IPath;
 import org.eclipse.core.runtime.NullProgressMonitor;
+import org.eclipse.core.runtime.jobs.Job;
 import org.eclipse.m2e.core.MavenPlugin;
 import org.eclipse.m2e.core.embedder.ArtifactKey;
 import org.eclipse.m2e.core.internal.IMavenConstants;
@@ -19,11 +23,27 @@ import org.eclipse.m2e.core.project.IMavenProjectFacade;
 import org.eclipse.m2e.core.project.ResolverConfiguration;
 import org.eclipse.m2e.tests.common.AbstractMavenProjectTestCase;
 import org.junit.Test;
+import org.sonatype.m2e.mavenarchiver.internal.GenerationStatistics;
+import org.sonatype.m2e.mavenarchiver.internal.ManifestWriter;
+import org.sonatype.m2e.mavenarchiver.internal.MavenArchiverConstants;
 
 @SuppressWarnings("restriction")
 public class MavenArchiverTest
     extends AbstractMavenProjectTestCase
 {
+    /**
+     * Also waits for the manifests generated in the background after project changes, and for the builds they
+     * trigger.
+     */
+    @Override
+    protected void waitForJobsToComplete()
+        throws InterruptedException, CoreException
+    {
+        super.waitForJobsToComplete();
+        Job.getJobManager().join( MavenArchiverConstants.MANIFEST_GENERATION_FAMILY, monitor );
+        super.waitForJobsToComplete();
+    }
+
     public void test001_pomProperties()
         throws Exception
     {
@@ -58,6 +78,15 @@ public class MavenArchiverTest
         // m2e specific properties
         assertEquals( project.getName(), properties.getProperty( "m2e.projectName" ) );
         assertEquals( project.getLocation().toOSString(), properties.getProperty( "m2e.projectLocation" ) );
+
+        // reproducible output : no timestamp, sorted keys
+        String content = getAsString( pomPropertiesPath );
+        assertTrue( "Unexpected header : " + content, content.startsWith( "#Generated by Maven Integration for Eclipse\n" ) );
+        String[] lines = content.split( "\n" );
+        for ( int i = 2; i < lines.length; i++ )
+        {
+            assertTrue( "Unsorted properties : " + content, lines[i - 1].compareTo( lines[i] ) < 0 );
+        }
     }
     
     public void testIncrementalBuild() throws Exception
@@ -79,13 +108,11 @@ public class MavenArchiverTest
             long pomTimestamp = workspace.getRoot().getFile( pomPath ).getModificationStamp();
             long pomPropertiesTimestamp = workspace.getRoot().getFile( pomPropertiesPath ).getModificationStamp();
             
+            // unchanged content is not rewritten, even on full builds
             project.build( IncrementalProjectBuilder.FULL_BUILD, monitor );
             waitForJobsToComplete();
-            assertFalse(pomPath + " hasn't been changed", pomTimestamp == workspace.getRoot().getFile( pomPath ).getModificationStamp());
-            assertFalse(pomPropertiesPath + " hasn't been changed", pomPropertiesTimestamp == workspace.getRoot().getFile( pomPropertiesPath ).getModificationStamp());
-            
-            pomTimestamp = workspace.getRoot().getFile( pomPath ).getModificationStamp();
-            pomPropertiesTimestamp = workspace.getRoot().getFile( pomPropertiesPath ).getModificationStamp();
+            assertTrue(pomPath + " has been changed", pomTimestamp == workspace.getRoot().getFile( pomPath ).getModificationStamp());
+            assertTrue(pomPropertiesPath + " has been changed", pomPropertiesTimestamp == workspace.getRoot().getFile( pomPropertiesPath ).getModificationStamp());
             
             IFile file = null;
             InputStream is = null;
@@ -101,8 +128,16 @@ public class MavenArchiverTest
 				project.getFile(IMavenConstants.POM_FILE_NAME).touch(monitor);
 				project.build( IncrementalProjectBuilder.INCREMENTAL_BUILD, monitor );
 				waitForJobsToComplete();
+				assertTrue(pomPath + " has been changed", pomTimestamp == workspace.getRoot().getFile( pomPath ).getModificationStamp());
+				assertTrue(pomPropertiesPath + " has been changed", pomPropertiesTimestamp == workspace.getRoot().getFile( pomPropertiesPath ).getModificationStamp());
+
+				IFile pomFile = project.getFile(IMavenConstants.POM_FILE_NAME);
+				String pomContent = getAsString(pomFile);
+				pomFile.setContents(new ByteArrayInputStream(pomContent.replace("<build>", "<description>changed</description>\n  <build>").getBytes("UTF-8")), true, false, monitor);
+				project.build( IncrementalProjectBuilder.INCREMENTAL_BUILD, monitor );
+				waitForJobsToComplete();
 				assertFalse(pomPath + " hasn't been changed", pomTimestamp == workspace.getRoot().getFile( pomPath ).getModificationStamp());
-				assertFalse(pomPropertiesPath + " hasn't been changed", pomPropertiesTimestamp == workspace.getRoot().getFile( pomPropertiesPath ).getModificationStamp());
+				assertTrue(pomPropertiesPath + " has been changed", pomPropertiesTimestamp == workspace.getRoot().getFile( pomPropertiesPath ).getModificationStamp());
             } finally {
 				if (is != null) {
 					try {
@@ -115,6 +150,95 @@ public class MavenArchiverTest
 			}
         }
 
+    public void testIncrementalBuild_unchangedArchiveConfiguration()
+            throws Exception
+    {
+        IProject project = importProject( "projects/mavenarchiver/mavenarchiver-p001/pom.xml");
+        waitForJobsToComplete();
+        assertNoErrors(project);
+
+        IFile manifestFile = project.getFile( "target/classes/META-INF/MANIFEST.MF");
+        assertTrue( manifestFile + " is not accessible", manifestFile.isAccessible() );
+        long manifestTimestamp = manifestFile.getModificationStamp();
+        long updates = GenerationStatistics.getManifestUpdates();
+
+        // new project state, with a reformatted but identical archive configuration
+        IFile pomFile = project.getFile(IMavenConstants.POM_FILE_NAME);
+        String pom = getAsString(pomFile);
+        String changed = pom.replace("<build>", "<description>changed</description>\n  <build>")
+                            .replace("<archive>", "<archive>\n\n");
+        pomFile.setContents(new ByteArrayInputStream(changed.getBytes("UTF-8")), true, false, monitor);
+        project.build( IncrementalProjectBuilder.INCREMENTAL_BUILD, monitor );
+        waitForJobsToComplete();
+
+        assertEquals( "Manifest was generated again", updates, GenerationStatistics.getManifestUpdates() );
+        assertEquals( manifestFile + " has been changed", manifestTimestamp, manifestFile.getModificationStamp() );
+    }
+
+    public void testIncrementalBuild_irrelevantDependencyChanges()
+            throws Exception
+    {
+        // test scoped dependencies never reach the Class-Path
+        assertDependencyChangeIgnored( "projects/mavenarchiver/mavenarchiver-p001/pom.xml", "test" );
+        // without addClasspath, no dependency reaches the manifest
+        assertDependencyChangeIgnored( "projects/mavenarchiver/mavenarchiver-p008/pom.xml", "compile" );
+    }
+
+    private void assertDependencyChangeIgnored( String pomLocation, String scope )
+            throws Exception
+    {
+        IProject project = importProject( pomLocation );
+        waitForJobsToComplete();
+        assertNoErrors(project);
+
+        IFile manifestFile = project.getFile( "target/classes/META-INF/MANIFEST.MF");
+        assertTrue( manifestFile + " is not accessible", manifestFile.isAccessible() );
+        long manifestTimestamp = manifestFile.getModificationStamp();
+        long updates = GenerationStatistics.getManifestUpdates();
+
+        IFile pomFile = project.getFile(IMavenConstants.POM_FILE_NAME);
+        String dependencies = "<dependencies><dependency><groupId>junit</groupId><artifactId>junit</artifactId>"
+            + "<version>3.8.1</version><scope>" + scope + "</scope></dependency></dependencies>\n  <build>";
+        String pom = getAsString(pomFile).replace("<build>", dependencies);
+        pomFile.setContents(new ByteArrayInputStream(pom.getBytes("UTF-8")), true, false, monitor);
+        project.build( IncrementalProjectBuilder.INCREMENTAL_BUILD, monitor );
+        waitForJobsToComplete();
+        assertNoErrors(project);
+
+        assertEquals( "Manifest was generated again", updates, GenerationStatistics.getManifestUpdates() );
+        assertEquals( manifestFile + " has been changed", manifestTimestamp, manifestFile.getModificationStamp() );
+    }
+
+    public void testIncrementalBuild_unrelatedManifestChange()
+            throws Exception
+    {
+        IProject project = importProject( "projects/mavenarchiver/mavenarchiver-p001/pom.xml");
+        waitForJobsToComplete();
+        assertNoErrors(project);
+
+        IFile manifestFile = project.getFile( "target/classes/META-INF/MANIFEST.MF");
+        assertTrue( manifestFile + " is not accessible", manifestFile.isAccessible() );
+        long manifestTimestamp = manifestFile.getModificationStamp();
+        long updates = GenerationStatistics.getManifestUpdates();
+        long coalesced = GenerationStatistics.getCoalescedGenerations();
+
+        // a test manifest and a resource, none of them an input or output of the generation
+        for ( String path : new String[] { "src/test", "src/test/resources", "src/test/resources/META-INF" } )
+        {
+            project.getFolder( path ).create( true, true, monitor );
+        }
+        IFile testManifest = project.getFile( "src/test/resources/META-INF/MANIFEST.MF" );
+        testManifest.create( new ByteArrayInputStream( "Manifest-Version: 1.0\r\n".getBytes( "UTF-8" ) ), true, monitor );
+        IFile resource = project.getFile( "readme.txt" );
+        resource.create( new ByteArrayInputStream( "readme".getBytes( "UTF-8" ) ), true, monitor );
+        project.build( IncrementalProjectBuilder.INCREMENTAL_BUILD, monitor );
+        waitForJobsToComplete();
+
+        // the build returned right away, without even a coalesced generation
+        assertEquals( "Manifest was generated again", updates, GenerationStatistics.getManifestUpdates() );
+        assertEquals( "Manifest generation was triggered", coalesced, GenerationStatistics.getCoalescedGenerations() );
+        assertEquals( manifestFile + " has been changed", manifestTimestamp, manifestFile.getModificationStamp() );
+    }
 
     public void test002_jarmanifest()
             throws Exception
@@ -160,6 +284,146 @@ public class MavenArchiverTest
         assertTrue( manifestPath + " is not accessible", workspace.getRoot().getFile( manifestPath ).isAccessible() );
     }
 
+    public void test002_unchangedManifestIsNotRewritten()
+            throws Exception
+    {
+        IProject project = importProject( "projects/mavenarchiver/mavenarchiver-p001/pom.xml");
+        waitForJobsToComplete();
+        assertNoErrors(project);
+
+        IFile manifestFile = project.getFile( "target/classes/META-INF/MANIFEST.MF");
+        assertTrue( manifestFile + " is not accessible", manifestFile.isAccessible() );
+        String manifestContent = getAsString(manifestFile);
+        long manifestTimestamp = manifestFile.getModificationStamp();
+        long writes = GenerationStatistics.getWrites();
+
+        // full builds force the manifest generation
+        project.build( IncrementalProjectBuilder.FULL_BUILD, monitor );
+        waitForJobsToComplete();
+
+        assertEquals( manifestContent, getAsString(manifestFile) );
+        assertEquals( manifestFile + " has been changed", manifestTimestamp, manifestFile.getModificationStamp() );
+        assertEquals( "Unchanged manifest was rewritten", writes, GenerationStatistics.getWrites() );
+    }
+
+    public void test002_duplicateGenerationsAreCoalesced()
+            throws Exception
+    {
+        IProject project = importProject( "projects/mavenarchiver/mavenarchiver-p001/pom.xml");
+        waitForJobsToComplete();
+        assertNoErrors(project);
+
+        IFile manifestFile = project.getFile( "target/classes/META-INF/MANIFEST.MF");
+        assertTrue( manifestFile + " is not accessible", manifestFile.isAccessible() );
+        long coalesced = GenerationStatistics.getCoalescedGenerations();
+        long writes = GenerationStatistics.getWrites();
+
+        // the pom change triggers both the project change event and the build participant
+        IFile pomFile = project.getFile(IMavenConstants.POM_FILE_NAME);
+        pomFile.setContents(new ByteArrayInputStream(getAsString(pomFile).getBytes("UTF-8")), true, false, monitor);
+        project.build( IncrementalProjectBuilder.INCREMENTAL_BUILD, monitor );
+        waitForJobsToComplete();
+
+        assertTrue( "Duplicate generation wasn't coalesced", GenerationStatistics.getCoalescedGenerations() > coalesced );
+        assertEquals( "Unchanged manifest was rewritten", writes, GenerationStatistics.getWrites() );
+
+        // a modified manifest is always regenerated
+        manifestFile.setContents(new ByteArrayInputStream("Manifest-Version: 1.0\r\n".getBytes("UTF-8")), true, false, monitor);
+        project.build( IncrementalProjectBuilder.INCREMENTAL_BUILD, monitor );
+        waitForJobsToComplete();
+        assertTrue("Created-By is missing", 
+                getAsString(manifestFile).contains("Created-By: Maven Integration for Eclipse"));
+    }
+
+    public void test007_dependencyChangeOnlyPatchesClassPath()
+            throws Exception
+    {
+        IProject project = importProject( "projects/mavenarchiver/mavenarchiver-p007/pom.xml");
+        waitForJobsToComplete();
+        assertNoErrors(project);
+
+        IFile manifestFile = project.getFile( "target/classes/META-INF/MANIFEST.MF");
+        assertTrue( manifestFile + " is not accessible", manifestFile.isAccessible() );
+        assertTrue("Invalid Classpath", 
+                getAsString(manifestFile).contains("Class-Path: lib/commons-lang-2.1.jar"));
+        long patched = GenerationStatistics.getPatchedManifests();
+
+        // only the dependencies change
+        IFile pomFile = project.getFile(IMavenConstants.POM_FILE_NAME);
+        String pom = getAsString(pomFile);
+        String testScoped = pom.replace("<version>2.1</version>", "<version>2.1</version><scope>test</scope>");
+        pomFile.setContents(new ByteArrayInputStream(testScoped.getBytes("UTF-8")), true, false, monitor);
+        project.build( IncrementalProjectBuilder.INCREMENTAL_BUILD, monitor );
+        waitForJobsToComplete();
+
+        String manifestContent = getAsString(manifestFile);
+        assertTrue( "Manifest wasn't patched", GenerationStatistics.getPatchedManifests() > patched );
+        assertFalse("Class-Path should be missing : "+manifestContent, manifestContent.contains("Class-Path:"));
+        assertTrue("Main-Class is missing : "+manifestContent, manifestContent.contains("Main-Class: foo.bar.Main"));
+
+        pomFile.setContents(new ByteArrayInputStream(pom.getBytes("UTF-8")), true, false, monitor);
+        project.build( IncrementalProjectBuilder.INCREMENTAL_BUILD, monitor );
+        waitForJobsToComplete();
+
+        manifestContent = getAsString(manifestFile);
+        assertTrue("Invalid Classpath : "+manifestContent, manifestContent.contains("Class-Path: lib/commons-lang-2.1.jar"));
+        // the patched manifest is the one the archiver generates
+        Manifest patchedManifest = new Manifest( new ByteArrayInputStream( manifestContent.getBytes( "UTF-8" ) ) );
+        assertEquals( generateManifest( project, manifestFile, false ), patchedManifest );
+    }
+
+    public void test006_reproducibleManifest()
+            throws Exception
+    {
+        IProject project = importProject( "projects/mavenarchiver/mavenarchiver-p006/pom.xml");
+        waitForJobsToComplete();
+        assertNoErrors(project);
+        IMavenProjectFacade facade = MavenPlugin.getMavenProjectRegistry().create( project, monitor );
+        ArtifactKey key = facade.getArtifactKey();
+
+        IFile manifestFile = project.getFile( "target/classes/META-INF/MANIFEST.MF");
+        assertTrue( manifestFile + " is not accessible", manifestFile.isAccessible() );
+
+        String manifestContent = getAsString(manifestFile);
+        assertTrue("Implementation-Title is missing : "+manifestContent, 
+        		manifestContent.contains("Implementation-Title: "+key.getArtifactId()));
+        assertFalse("Built-By should be missing : "+manifestContent, manifestContent.contains("Built-By:"));
+        assertFalse("Build-Jdk should be missing : "+manifestContent, manifestContent.contains("Build-Jdk:"));
+        assertTrue("Build-Jdk-Spec is missing : "+manifestContent, manifestContent.contains("Build-Jdk-Spec:"));
+        assertFalse("Invalid line endings : "+manifestContent, manifestContent.replace("\r\n", "").contains("\n"));
+    }
+
+    public void test006_reproducibleOutputToggle()
+            throws Exception
+    {
+        IProject project = importProject( "projects/mavenarchiver/mavenarchiver-p006/pom.xml");
+        waitForJobsToComplete();
+        assertNoErrors(project);
+
+        IFile manifestFile = project.getFile( "target/classes/META-INF/MANIFEST.MF");
+        assertFalse("Built-By should be missing", getAsString(manifestFile).contains("Built-By:"));
+
+        // a single character disables reproducible output, nothing else changes
+        IFile pomFile = project.getFile(IMavenConstants.POM_FILE_NAME);
+        String pom = getAsString(pomFile);
+        String disabled = pom.replace("2020-01-01T00:00:00Z", "-");
+        pomFile.setContents(new ByteArrayInputStream(disabled.getBytes("UTF-8")), true, false, monitor);
+        project.build( IncrementalProjectBuilder.INCREMENTAL_BUILD, monitor );
+        waitForJobsToComplete();
+
+        String manifestContent = getAsString(manifestFile);
+        assertTrue("Built-By is missing : "+manifestContent, manifestContent.contains("Built-By:"));
+        assertTrue("Build-Jdk is missing : "+manifestContent, manifestContent.contains("Build-Jdk:"));
+
+        pomFile.setContents(new ByteArrayInputStream(pom.getBytes("UTF-8")), true, false, monitor);
+        project.build( IncrementalProjectBuilder.INCREMENTAL_BUILD, monitor );
+        waitForJobsToComplete();
+
+        manifestContent = getAsString(manifestFile);
+        assertFalse("Built-By should be missing : "+manifestContent, manifestContent.contains("Built-By:"));
+        assertFalse("Build-Jdk should be missing : "+manifestContent, manifestContent.contains("Build-Jdk:"));
+    }
+
     public void test003_jarmanifest_classpath()
             throws Exception
     {
@@ -295,6 +559,192 @@ public class MavenArchiverTest
         		manifestContent.contains("Class-Path: mavenarchiver-p001-0.0.1-SNAPSHOT.jar"));
     }
 
+    public void test004_workspaceProjectChangeUpdatesDependentClassPath()
+            throws Exception
+    {
+        IProject[] projects = importProjects( "projects/mavenarchiver/",
+                                new String[]
+                                        {
+                                        "mavenarchiver-p004/pom.xml",
+                                        "mavenarchiver-p001/pom.xml"
+                                        },
+                                new ResolverConfiguration());
+        waitForJobsToComplete();
+        IProject project = projects[0];
+        IProject dependency = projects[1];
+        assertNoErrors(project);
+        assertNoErrors(dependency);
+
+        IFile manifestFile = project.getFile( "target/classes/META-INF/MANIFEST.MF");
+        assertTrue( manifestFile + " is not accessible", manifestFile.isAccessible() );
+        String manifestContent = getAsString(manifestFile);
+        assertTrue("Invalid Classpath in manifest : " + manifestContent,
+                manifestContent.contains("Class-Path: mavenarchiver-p001-0.0.1-SNAPSHOT.jar"));
+
+        // the workspace artifact disappears, the dependency coordinates of the project don't change
+        dependency.close( monitor );
+        waitForJobsToComplete();
+        manifestContent = getAsString(manifestFile);
+        assertFalse("Stale Classpath in manifest : " + manifestContent,
+                manifestContent.contains("mavenarchiver-p001-0.0.1-SNAPSHOT.jar"));
+
+        // then comes back
+        dependency.open( monitor );
+        waitForJobsToComplete();
+        manifestContent = getAsString(manifestFile);
+        assertTrue("Invalid Classpath in manifest : " + manifestContent,
+                manifestContent.contains("Class-Path: mavenarchiver-p001-0.0.1-SNAPSHOT.jar"));
+    }
+
+    public void test007_nativeManifestParity()
+        throws Exception
+    {
+        // only maven-jar-plugin 2.4 projects can take the native path
+        String[] names = { "mavenarchiver-p005", "mavenarchiver-p006", "mavenarchiver-p007", "mavenarchiver-p008" };
+        for ( String name : names )
+        {
+            IProject project = importProject( "projects/mavenarchiver/" + name + "/pom.xml" );
+            waitForJobsToComplete();
+            assertNoErrors( project );
+
+            IFile manifestFile = project.getFile( "target/classes/META-INF/MANIFEST.MF" );
+            long nativeManifests = GenerationStatistics.getNativeManifests();
+            Manifest reflectiveManifest = generateManifest( project, manifestFile, false );
+            assertEquals( name + " was generated natively", nativeManifests, GenerationStatistics.getNativeManifests() );
+            Manifest nativeManifest = generateManifest( project, manifestFile, true );
+            assertTrue( name + " wasn't generated natively", GenerationStatistics.getNativeManifests() > nativeManifests );
+            assertEquals( name + " manifests differ : " + getAsString( manifestFile ), reflectiveManifest, nativeManifest );
+        }
+
+        IFile manifestFile = workspace.getRoot().getProject( "mavenarchiver-p007" ).getFile( "target/classes/META-INF/MANIFEST.MF" );
+        String manifestContent = getAsString( manifestFile );
+        assertTrue( "Invalid Class-Path : " + manifestContent, manifestContent.contains( "Class-Path: lib/commons-lang-2.1.jar\r\n" ) );
+        assertTrue( "Main-Class is missing : " + manifestContent, manifestContent.contains( "Main-Class: foo.bar.Main" ) );
+        assertTrue( "Built-By is not overridden : " + manifestContent, manifestContent.contains( "Built-By: m2e" ) );
+        assertTrue( "Section is missing : " + manifestContent, manifestContent.contains( "Name: foo/bar/" ) );
+        assertFalse( "Implementation-URL isn't written by maven-archiver 2.5 : " + manifestContent,
+                     manifestContent.contains( "Implementation-URL" ) );
+
+        // the default-jar execution inherits the jar goal, its archive configuration applies
+        manifestFile = workspace.getRoot().getProject( "mavenarchiver-p008" ).getFile( "target/classes/META-INF/MANIFEST.MF" );
+        manifestContent = getAsString( manifestFile );
+        assertTrue( "Built-By is not overridden : " + manifestContent, manifestContent.contains( "Built-By: default-jar" ) );
+    }
+
+    public void test008_manifestWriterMergesSections()
+        throws Exception
+    {
+        // the streamed merge is the merge of both manifests
+        Manifest manifest = newManifest( 10000, "generated" );
+        Manifest overrides = newManifest( 15000, "provided" );
+        overrides.getMainAttributes().putValue( "Created-By", "provided" );
+        Manifest merged = new Manifest( manifest );
+        merged.getMainAttributes().putAll( overrides.getMainAttributes() );
+        for ( Map.Entry<String, Attributes> section : overrides.getEntries().entrySet() )
+        {
+            Attributes attributes = merged.getAttributes( section.getKey() );
+            if ( attributes == null )
+            {
+                merged.getEntries().put( section.getKey(), section.getValue() );
+            }
+            else
+            {
+                attributes.putAll( section.getValue() );
+            }
+        }
+        byte[] content = ManifestWriter.write( manifest, overrides );
+        Manifest written = new Manifest( new ByteArrayInputStream( content ) );
+        assertEquals( merged, written );
+
+        // every section is written once
+        assertEquals( 15000, written.getEntries().size() );
+        int names = 0;
+        for ( String line : new String( content, "UTF-8" ).split( "\r\n" ) )
+        {
+            if ( line.startsWith( "Name: " ) )
+            {
+                names++;
+            }
+        }
+        assertEquals( "Duplicate or missing sections", 15000, names );
+
+        // lines are wrapped at 72 bytes, with CRLF only
+        int column = 0;
+        for ( int i = 0; i < content.length; i++ )
+        {
+            byte b = content[i];
+            if ( b == '\n' )
+            {
+                assertTrue( "LF without CR", i > 0 && content[i - 1] == '\r' );
+                column = 0;
+            }
+            else if ( b != '\r' )
+            {
+                column++;
+                assertTrue( "Line longer than 72 bytes", column <= 72 );
+            }
+        }
+    }
+
+    private Manifest newManifest( int sections, String digest )
+    {
+        Manifest manifest = new Manifest();
+        manifest.getMainAttributes().put( Attributes.Name.MANIFEST_VERSION, "1.0" );
+        manifest.getMainAttributes().putValue( "Created-By", "test" );
+        StringBuilder exports = new StringBuilder( "org.example.core" );
+        for ( int i = 0; i < 100; i++ )
+        {
+            exports.append( ",org.example.api" ).append( i ).append( ";version=\"1.0.0\"" );
+        }
+        manifest.getMainAttributes().putValue( "Export-Package", exports.toString() );
+        for ( int i = 0; i < sections; i++ )
+        {
+            Attributes attributes = new Attributes();
+            attributes.putValue( "SHA-256-Digest", digest + "/" + i + "/\u00e9\u20ac/0123456789abcdefghijklmnopqrstuvwxyz=" );
+            manifest.getEntries().put( "org/example/impl/package" + i % 100 + "/Type" + i + ".class", attributes );
+        }
+        return manifest;
+    }
+
+    /**
+     * Deletes and generates the manifest again, either natively or through the archiver mojo.
+     */
+    private Manifest generateManifest( IProject project, IFile manifestFile, boolean nativeManifest )
+        throws Exception
+    {
+        String previous = System.getProperty( MavenArchiverConstants.NATIVE_MANIFEST_PROPERTY );
+        System.setProperty( MavenArchiverConstants.NATIVE_MANIFEST_PROPERTY, Boolean.toString( nativeManifest ) );
+        try
+        {
+            manifestFile.delete( true, monitor );
+            project.build( IncrementalProjectBuilder.FULL_BUILD, monitor );
+            waitForJobsToComplete();
+            assertNoErrors( project );
+            assertTrue( manifestFile + " is not accessible", manifestFile.isAccessible() );
+
+            InputStream contents = manifestFile.getContents();
+            try
+            {
+                return new Manifest( contents );
+            }
+            finally
+            {
+                contents.close();
+            }
+        }
+        finally
+        {
+            if ( previous == null )
+            {
+                System.clearProperty( MavenArchiverConstants.NATIVE_MANIFEST_PROPERTY );
+            }
+            else
+            {
+                System.setProperty( MavenArchiverConstants.NATIVE_MANIFEST_PROPERTY, previous );
+            }
+        }
+    }
+
     private Properties loadProperties( IPath aPath )
         throws CoreException, IOException
     {
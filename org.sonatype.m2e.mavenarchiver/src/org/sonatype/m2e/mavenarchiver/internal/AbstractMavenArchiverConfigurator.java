@@ -11,62 +11,63 @@ package org.sonatype.m2e.mavenarchiver.internal;
 import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.File;
+import java.io.FileInputStream;
 import java.io.FileNotFoundException;
-import java.io.FileReader;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStreamWriter;
 import java.io.PrintWriter;
-import java.io.Reader;
-import java.lang.reflect.Constructor;
-import java.lang.reflect.Field;
 import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
 import java.util.ArrayList;
 import java.util.Collections;
-import java.util.LinkedHashSet;
+import java.util.HashSet;
 import java.util.List;
-import java.util.Map;
 import java.util.Properties;
 import java.util.Set;
 import java.util.jar.Attributes;
 import java.util.jar.Manifest;
 
 import org.apache.maven.artifact.Artifact;
-import org.apache.maven.artifact.DefaultArtifact;
-import org.apache.maven.artifact.repository.ArtifactRepository;
 import org.apache.maven.execution.MavenExecutionRequest;
 import org.apache.maven.execution.MavenSession;
 import org.apache.maven.lifecycle.MavenExecutionPlan;
+import org.apache.maven.model.Parent;
 import org.apache.maven.model.Plugin;
+import org.apache.maven.model.PluginExecution;
 import org.apache.maven.plugin.Mojo;
 import org.apache.maven.plugin.MojoExecution;
 import org.apache.maven.project.MavenProject;
 import org.codehaus.plexus.classworlds.realm.ClassRealm;
 import org.codehaus.plexus.util.IOUtil;
-import org.codehaus.plexus.util.ReflectionUtils;
 import org.codehaus.plexus.util.WriterFactory;
 import org.codehaus.plexus.util.xml.Xpp3Dom;
 import org.codehaus.plexus.util.xml.Xpp3DomUtils;
+import org.eclipse.core.resources.IContainer;
 import org.eclipse.core.resources.IFile;
 import org.eclipse.core.resources.IFolder;
 import org.eclipse.core.resources.IProject;
 import org.eclipse.core.resources.IResource;
 import org.eclipse.core.resources.IResourceDelta;
-import org.eclipse.core.resources.IResourceDeltaVisitor;
 import org.eclipse.core.resources.IWorkspaceRoot;
+import org.eclipse.core.resources.IWorkspaceRunnable;
 import org.eclipse.core.resources.ResourcesPlugin;
 import org.eclipse.core.runtime.CoreException;
 import org.eclipse.core.runtime.IPath;
 import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.core.runtime.IStatus;
+import org.eclipse.core.runtime.Status;
 import org.eclipse.m2e.core.MavenPlugin;
 import org.eclipse.m2e.core.embedder.ArtifactKey;
 import org.eclipse.m2e.core.embedder.IMaven;
+import org.eclipse.m2e.core.embedder.IMavenConfiguration;
 import org.eclipse.m2e.core.internal.IMavenConstants;
 import org.eclipse.m2e.core.internal.M2EUtils;
 import org.eclipse.m2e.core.lifecyclemapping.model.IPluginExecutionMetadata;
 import org.eclipse.m2e.core.project.IMavenProjectFacade;
 import org.eclipse.m2e.core.project.IMavenProjectRegistry;
 import org.eclipse.m2e.core.project.MavenProjectChangedEvent;
+import org.eclipse.m2e.core.project.ResolverConfiguration;
 import org.eclipse.m2e.core.project.configurator.AbstractBuildParticipant;
 import org.eclipse.m2e.core.project.configurator.AbstractProjectConfigurator;
 import org.eclipse.m2e.core.project.configurator.MojoExecutionKey;
@@ -100,14 +101,30 @@ public abstract class AbstractMavenArchiverConfigurator extends AbstractProjectC
 
   private static final String ARCHIVE_NODE = "archive";
 
-  private static final String CREATED_BY_ENTRY = "Created-By";
+  private static final String CLASS_PATH = "Class-Path";
 
-  private static final String MAVEN_ARCHIVER_CLASS = "org.apache.maven.archiver.MavenArchiver";
+  private static final String CREATED_BY_ENTRY = "Created-By";
 
   private static final String M2E = "Maven Integration for Eclipse";
   
   private static final String GENERATED_BY_M2E = "Generated by "+M2E;
 
+  private static final MojoExecutionCache mojoExecutionCache = new MojoExecutionCache();
+
+  private static final ParentProjectCache parentProjectCache = new ParentProjectCache();
+
+  private static final MavenSessionCache sessionCache = new MavenSessionCache();
+
+  private static final ConfiguredMojoCache configuredMojoCache = new ConfiguredMojoCache();
+
+  private static final GenerationHistory generationHistory = new GenerationHistory();
+
+  private static final ManifestGenerationScheduler generationScheduler = new ManifestGenerationScheduler();
+
+  private static final ClassPathIndex classPathIndex = new ClassPathIndex();
+
+  private static final ProvidedManifestCache providedManifestCache = new ProvidedManifestCache();
+
   public void configure(ProjectConfigurationRequest request, IProgressMonitor monitor) throws CoreException {
     //Nothing to configure
   }
@@ -127,37 +144,46 @@ public abstract class AbstractMavenArchiverConfigurator extends AbstractProjectC
       return new AbstractBuildParticipant() {
         public Set<IProject> build(int kind, IProgressMonitor monitor) throws Exception {
           IResourceDelta delta = getDelta(projectFacade.getProject());
-          
-          boolean forceManifest = false;
-          if (delta != null) {
-            ManifestDeltaVisitor visitor = new ManifestDeltaVisitor();
-            delta.accept(visitor);
-            forceManifest = visitor.foundManifest;
-          }
 
-          // this will be true for full builds too
-          boolean forcePom = getBuildContext().hasDelta(IMavenConstants.POM_FILE_NAME);
+          //Only looks for the generated and provided manifests and the pom, all triggers for full builds
+          MavenProject currentProject = projectFacade.getMavenProject();
+          File providedManifest = getProvidedManifestFile(currentProject, getArchiveConfiguration(currentProject));
+          ManifestDelta manifestDelta = ManifestDelta.classify(delta, projectFacade.getProject(),
+              getOutputDir(projectFacade), providedManifest);
+          if(manifestDelta.isEmpty()
+              && generationHistory.isBuilt(projectFacade.getProject(), getPluginKey(), currentProject)) {
+            //Nothing changed since the last build of this project state, e.g. a java file was saved
+            return null;
+          }
+          boolean forceManifest = manifestDelta.manifestChanged;
+          boolean forcePom = manifestDelta.pomChanged;
 
           //The manifest will be (re)generated if it doesn't exist or an existing manifest is modified
           mavenProjectChanged(projectFacade, null, forceManifest || forcePom, monitor);
 
-          if (!forcePom) {
-        	  IProject project = projectFacade.getProject();
-        	  IWorkspaceRoot root = project.getWorkspace().getRoot();
-        	  ArtifactKey mavenProject = projectFacade.getArtifactKey();  
-        	  IPath outputPath = getOutputDir(projectFacade).append("META-INF/maven").append(mavenProject.getGroupId()).append(
-        	        mavenProject.getArtifactId());
-
-        	  IFolder output = root.getFolder(outputPath);
-        	  IFile pom = output.getFile(IMavenConstants.POM_FILE_NAME);
-        	  if (pom == null || !pom.exists()) {
-        		  forcePom = true;
-        	  }
+          IProject project = projectFacade.getProject();
+          IWorkspaceRoot root = project.getWorkspace().getRoot();
+          ArtifactKey mavenProject = projectFacade.getArtifactKey();  
+          IPath outputPath = getOutputDir(projectFacade).append("META-INF/maven").append(mavenProject.getGroupId()).append(
+                mavenProject.getArtifactId());
+
+          IFolder output = root.getFolder(outputPath);
+          IFile pom = output.getFile(IMavenConstants.POM_FILE_NAME);
+          if (pom == null || !pom.exists()) {
+            forcePom = true;
+          } else if (forcePom && generationHistory.isPomCurrent(project, getPluginKey(), projectFacade.getPom())) {
+            //Already copied from this very pom, e.g. by a previous build of the same change
+            forcePom = false;
           }
           if (forcePom) {
-        	  writePom(projectFacade, monitor);
+            writePom(projectFacade, monitor);
+            generationHistory.pomWritten(project, getPluginKey(), projectFacade.getPom());
           }
 
+          //Failed generations are retried by the next build
+          if(getManifestFingerprint(currentProject).equals(ManifestFingerprint.getStored(project, getPluginKey()))) {
+            generationHistory.built(project, getPluginKey(), currentProject);
+          }
           return null;
         }
       };
@@ -165,24 +191,9 @@ public abstract class AbstractMavenArchiverConfigurator extends AbstractProjectC
     return null;
   }
 
-  private class ManifestDeltaVisitor implements IResourceDeltaVisitor {
-
-    private final String MANIFEST = "MANIFEST.MF";
-
-    boolean foundManifest;
-
-    public boolean visit(IResourceDelta delta) throws CoreException {
-      if (delta.getResource() instanceof IFile 
-          && MANIFEST.equals(delta.getResource().getName())) {
-        foundManifest = true;
-      }
-      return !foundManifest;
-    }
-  }
-  
   /**
-   * Generates the project manifest if necessary, that is if the project manifest configuration has changed or if the
-   * dependencies have changed.
+   * Schedules the generation of the project manifest if necessary, that is if the project manifest configuration has
+   * changed or if the dependencies have changed. The manifest is generated in the background.
    */
   public void mavenProjectChanged(MavenProjectChangedEvent event, IProgressMonitor monitor) throws CoreException {
 
@@ -191,23 +202,222 @@ public abstract class AbstractMavenArchiverConfigurator extends AbstractProjectC
     if(oldFacade == null && newFacade == null) {
       return;
     }
-    mavenProjectChanged(newFacade, oldFacade, false, monitor);
+    if(oldFacade != null) {
+      //The project may be the parent of other projects
+      ArtifactKey key = oldFacade.getArtifactKey();
+      parentProjectCache.remove(key.getGroupId(), key.getArtifactId(), key.getVersion());
+    }
+    //The manifests referencing the previous or the new artifact of the project are stale, as their Class-Path
+    //depends on the workspace artifacts, even if the coordinates of their dependencies didn't change
+    ArtifactKey oldKey = oldFacade == null ? null : oldFacade.getArtifactKey();
+    ArtifactKey newKey = newFacade == null ? null : newFacade.getArtifactKey();
+    if(oldKey == null || !oldKey.equals(newKey)) {
+      scheduleDependents(oldKey);
+      scheduleDependents(newKey);
+    }
+    if(newFacade == null) {
+      //The project was removed
+      mojoExecutionCache.remove(oldFacade.getProject());
+      sessionCache.remove(oldFacade.getProject());
+      configuredMojoCache.remove(oldFacade.getProject(), maven);
+      generationHistory.remove(oldFacade.getProject());
+      generationScheduler.remove(oldFacade.getProject());
+      classPathIndex.remove(oldFacade.getProject());
+      WorkspaceArtifactFiles.remove(oldFacade.getProject());
+      return;
+    }
+    //The session of the previous project state, and the mojo configured with it, can't be reused anymore
+    if(sessionCache.removeStale(newFacade.getProject(), newFacade.getMavenProject())) {
+      configuredMojoCache.removeMojo(newFacade.getProject(), maven);
+    }
+    //Neither can its archiver execution, whose plugin realm may have been flushed
+    if(oldFacade == null || oldFacade.getMavenProject() != newFacade.getMavenProject()) {
+      mojoExecutionCache.remove(newFacade.getProject());
+    }
+    //Only the check is done synchronously, the generation itself is queued, as many projects may change at once.
+    //It's forced, as the worker has no old project state to compare to anymore
+    if(needsNewManifest(getManifestFile(newFacade), oldFacade, newFacade, monitor)) {
+      generationScheduler.schedule(this, newFacade.getProject(), true);
+    }
+  }
+
+  /**
+   * Forces the generation of the manifests referencing the artifact : their inputs are the same, but the workspace
+   * artifact they reference appeared, disappeared or moved.<br/>
+   * Their stored fingerprint is cleared too, so the next build still generates them if the queued generation is
+   * dropped, e.g. when the worker is canceled.
+   */
+  private static void scheduleDependents(ArtifactKey artifactKey) throws CoreException {
+    if(artifactKey == null) {
+      return;
+    }
+    for(ClassPathIndex.Dependent dependent : classPathIndex.getDependents(artifactKey)) {
+      String pluginKey = dependent.configurator.getPluginKey();
+      generationHistory.invalidate(dependent.project, pluginKey);
+      ManifestFingerprint.store(dependent.project, pluginKey, null);
+      generationScheduler.schedule(dependent.configurator, dependent.project, true);
+    }
   }
 
  
   public void mavenProjectChanged(IMavenProjectFacade newFacade, IMavenProjectFacade oldFacade, boolean forceGeneration, IProgressMonitor monitor)
       throws CoreException {
 
-    final IWorkspaceRoot root = ResourcesPlugin.getWorkspace().getRoot();
-    IFolder outputdir = root.getFolder(getOutputDir(newFacade)); 
-    
-    IFile manifest = outputdir.getFolder("META-INF").getFile("MANIFEST.MF");
+    IFile manifest = getManifestFile(newFacade);
+
+    //Keep track of the workspace artifacts the manifest may reference
+    MavenProject mavenProject = newFacade.getMavenProject();
+    Xpp3Dom archiveConfig = getArchiveConfiguration(mavenProject);
+    classPathIndex.update(this, newFacade.getProject(),
+        ManifestRelevance.isClasspathRelevant(archiveConfig) ? mavenProject.getArtifacts() : null,
+        ManifestRelevance.isExtensionsRelevant(archiveConfig));
 
     if(forceGeneration || needsNewManifest(manifest, oldFacade, newFacade, monitor)) {
-      generateManifest(newFacade, manifest, monitor);
-      refresh(newFacade, outputdir, monitor);
+      //Drop duplicate triggers of the same change : same inputs, and the manifest wasn't touched since
+      IProject project = newFacade.getProject();
+      final String fingerprint = getManifestFingerprint(mavenProject);
+      if(generationHistory.isManifestCurrent(project, getPluginKey(), fingerprint, manifest)) {
+        GenerationStatistics.coalesced();
+        return;
+      }
+
+      //The generated files are written through the workspace, in a single operation
+      final IMavenProjectFacade facade = newFacade;
+      final IFile manifestFile = manifest;
+      final Xpp3Dom archive = archiveConfig;
+      IWorkspaceRunnable generation = new IWorkspaceRunnable() {
+        public void run(IProgressMonitor monitor) throws CoreException {
+          updateManifest(facade, manifestFile, archive, fingerprint, monitor);
+        }
+      };
+      ResourcesPlugin.getWorkspace().run(generation, project, 0, monitor);
+    }
+
+  }
+
+  /**
+   * Generates the manifest, or only patches its Class-Path if nothing else changed since the last generation.
+   */
+  private void updateManifest(IMavenProjectFacade newFacade, IFile manifest, Xpp3Dom archiveConfig,
+      String fingerprint, IProgressMonitor monitor) throws CoreException {
+    GenerationStatistics.updated();
+    IProject project = newFacade.getProject();
+    MavenProject mavenProject = newFacade.getMavenProject();
+    String baseFingerprint = ManifestFingerprint.computeWithoutDependencies(mavenProject,
+        mavenProject.getPlugin(getPluginKey()), archiveConfig);
+    String classPath = getPatchableClassPath(newFacade, archiveConfig);
+
+    //Only the dependencies changed since the last generation, only the Class-Path needs to be updated
+    String previousClassPath = generationHistory.getPatchableClassPath(project, getPluginKey(), baseFingerprint,
+        manifest);
+    if(previousClassPath != null && classPath != null
+        && patchClassPath(manifest, previousClassPath, classPath, monitor)) {
+      ManifestFingerprint.store(project, getPluginKey(), fingerprint);
+      refresh(newFacade, getOutputFolder(newFacade), monitor);
+      generationHistory.manifestGenerated(project, getPluginKey(), fingerprint, baseFingerprint, classPath,
+          manifest);
+      GenerationStatistics.patched();
+      return;
+    }
+
+    generateManifest(newFacade, manifest, monitor);
+    refresh(newFacade, getOutputFolder(newFacade), monitor);
+    //Failed generations don't store their fingerprint, and must not be coalesced
+    if(fingerprint.equals(ManifestFingerprint.getStored(project, getPluginKey()))) {
+      //The Class-Path can only be patched later if the archiver generated the expected one
+      if(classPath != null && !classPath.equals(getClassPath(manifest))) {
+        classPath = null;
+      }
+      generationHistory.manifestGenerated(project, getPluginKey(), fingerprint, baseFingerprint, classPath,
+          manifest);
+    } else {
+      generationHistory.remove(project, getPluginKey());
+    }
+  }
+
+  /**
+   * @return the Class-Path the archiver builds for the current dependencies of the project, or null if the manifest
+   *         can't be patched for this configuration.
+   */
+  private String getPatchableClassPath(IMavenProjectFacade facade, Xpp3Dom archiveConfig) throws CoreException {
+    if(!ManifestRelevance.isClasspathRelevant(archiveConfig)) {
+      return null;
+    }
+    //Both the configured Class-Path and the provided manifest are merged with the generated Class-Path
+    Xpp3Dom manifestEntriesNode = archiveConfig.getChild(MANIFEST_ENTRIES_NODE);
+    if(archiveConfig.getChild("manifestFile") != null
+        || (manifestEntriesNode != null && manifestEntriesNode.getChild(CLASS_PATH) != null)) {
+      return null;
+    }
+    //The file names of the workspace artifacts are only known once fixed
+    return NativeManifestGenerator.getClassPath(fixArtifactFileNames(facade), archiveConfig);
+  }
+
+  /**
+   * @return the Class-Path of the manifest, empty if it has none, or null if it can't be read.
+   */
+  private static String getClassPath(IFile manifest) {
+    Manifest content = readManifest(manifest);
+    if(content == null) {
+      return null;
+    }
+    String classPath = content.getMainAttributes().getValue(CLASS_PATH);
+    return classPath == null ? "" : classPath;
+  }
+
+  private static Manifest readManifest(IFile manifest) {
+    IPath location = manifest.getLocation();
+    File file = location == null ? null : location.toFile();
+    if(file == null || !file.isFile()) {
+      return null;
+    }
+    try {
+      InputStream is = new FileInputStream(file);
+      try {
+        return new Manifest(is);
+      } finally {
+        IOUtil.close(is);
+      }
+    } catch(IOException ex) {
+      return null;
     }
+  }
 
+  /**
+   * Replaces the Class-Path of a previously generated manifest, if it still has the expected one.
+   * @return true if the manifest is up to date, false if it must be generated again
+   */
+  private boolean patchClassPath(IFile manifest, String previousClassPath, String classPath,
+      IProgressMonitor monitor) {
+    Manifest content = readManifest(manifest);
+    if(content == null) {
+      return false;
+    }
+    Attributes main = content.getMainAttributes();
+    String currentClassPath = main.getValue(CLASS_PATH);
+    if(!previousClassPath.equals(currentClassPath == null ? "" : currentClassPath)) {
+      return false;
+    }
+    if(classPath.length() > 0) {
+      main.putValue(CLASS_PATH, classPath);
+    } else {
+      main.remove(new Attributes.Name(CLASS_PATH));
+    }
+    try {
+      writeIfChanged(manifest, ManifestWriter.write(content, null), monitor);
+      return true;
+    } catch(CoreException ex) {
+      return false;
+    }
+  }
+
+  private IFile getManifestFile(IMavenProjectFacade facade) {
+    return getOutputFolder(facade).getFolder("META-INF").getFile("MANIFEST.MF");
+  }
+
+  private IFolder getOutputFolder(IMavenProjectFacade facade) {
+    IWorkspaceRoot root = ResourcesPlugin.getWorkspace().getRoot();
+    return root.getFolder(getOutputDir(facade));
   }
 
   /**
@@ -218,31 +428,49 @@ public abstract class AbstractMavenArchiverConfigurator extends AbstractProjectC
   protected abstract IPath getOutputDir(IMavenProjectFacade facade);
 
   /**
-   * Refreshes the output directory of the maven project after file generation.<br/>
-   * Implementations can override this method to add some post processing.
+   * Called after the generation of the manifest in the output directory. By default, only the generated manifest is
+   * refreshed, by {@link #refresh(IMavenProjectFacade, IFile, IProgressMonitor)}.
    * @param mavenFacade the maven facade
-   * @param outputdir the output directory to refresh
+   * @param outputdir the output directory
    * @param monitor the progress monitor
    * @throws CoreException
+   * @deprecated only the generated files are refreshed, this method is only still called so existing overrides keep
+   *             working, override {@link #refresh(IMavenProjectFacade, IFile, IProgressMonitor)} instead
    */
   protected void refresh(IMavenProjectFacade mavenFacade, IFolder outputdir, IProgressMonitor monitor) throws CoreException {
-     //refresh the target folder
-     if (outputdir.exists()) {
-	   try {
-	     outputdir.refreshLocal(IResource.DEPTH_INFINITE, monitor);
-       } catch (Exception e) {
-	     e.printStackTrace();
-        //random java.lang.IllegalArgumentException: Element not found: /parent/project/target/classes/META-INF.
-	    //occur when refreshing the folder on project import / creation 
-	    //See https://bugs.eclipse.org/bugs/show_bug.cgi?id=244315
-       }
-     }
+    refresh(mavenFacade, outputdir.getFolder("META-INF").getFile("MANIFEST.MF"), monitor);
+  }
+
+  /**
+   * Called after the generation of a file. Generated files are written through the workspace, so this only refreshes
+   * the file if it's still unknown to the workspace, e.g. when it was written by the archiver itself : only the file
+   * is refreshed, or the topmost of its parent folders the workspace doesn't know about yet.<br/>
+   * Implementations can override this method to add some post processing.
+   * @param mavenFacade the maven facade
+   * @param generatedFile the generated file to refresh
+   * @param monitor the progress monitor
+   * @throws CoreException
+   */
+  protected void refresh(IMavenProjectFacade mavenFacade, IFile generatedFile, IProgressMonitor monitor) throws CoreException {
+    if(generatedFile.exists()) {
+      return;
+    }
+    IResource resource = generatedFile;
+    IContainer parent = resource.getParent();
+    while(parent != null && parent.getType() != IResource.PROJECT && !parent.exists()) {
+      resource = parent;
+      parent = resource.getParent();
+    }
+    if(parent != null && parent.isAccessible()) {
+      resource.refreshLocal(resource == generatedFile ? IResource.DEPTH_ZERO : IResource.DEPTH_INFINITE, monitor);
+    }
   }
   
   /**
    * Checks if the MANIFEST.MF needs to be regenerated. That is if :
    * <ul><li>it doesn't already exist</li>
    * <li>the maven project configuration changed</li>
+   * <li>reproducible output was enabled or disabled</li>
    * <li>the maven project dependencies changed</li>
    * </ul> 
    * Implementations can override this method to add pre-conditions.
@@ -258,126 +486,145 @@ public abstract class AbstractMavenArchiverConfigurator extends AbstractProjectC
     if(!manifest.exists()) {
       return true;
     }
-    //Can't compare to a previous state, so assuming it's unchanged
+    //Can't compare to a previous state, so compare the manifest inputs to the ones of the last generation.
     //This situation actually occurs during incremental builds, 
-    //when called from the buildParticipant
+    //when called from the buildParticipant, and after restarts
     if(oldFacade == null || oldFacade.getMavenProject() == null) {
-      return false;
+      String fingerprint = ManifestFingerprint.getStored(newFacade.getProject(), getPluginKey());
+      return !getManifestFingerprint(newFacade.getMavenProject()).equals(fingerprint);
     }
 
     MavenProject newProject = newFacade.getMavenProject();
     MavenProject oldProject = oldFacade.getMavenProject();
 
-    //Assume Sets of artifacts are actually ordered
-    if(dependenciesChanged(oldProject.getArtifacts() == null ? null 
-                                                             : new ArrayList<Artifact>(oldProject.getArtifacts()), 
-                           newProject.getArtifacts() == null ? null
-                                                             : new ArrayList<Artifact>(newProject.getArtifacts()))) {
+    Plugin oldPlugin = oldProject.getPlugin(getPluginKey());
+    Plugin newPlugin = newProject.getPlugin(getPluginKey());
+    if(isChanged(oldPlugin == null ? null : oldPlugin.getVersion(), newPlugin == null ? null : newPlugin.getVersion())) {
       return true;
     }
 
     Xpp3Dom oldArchiveConfig = getArchiveConfiguration(oldProject);
     Xpp3Dom newArchiveConfig = getArchiveConfiguration(newProject);
 
-    if(newArchiveConfig != null && !newArchiveConfig.equals(oldArchiveConfig) 
-    || oldArchiveConfig != null ) {
+    if(!Xpp3DomHash.equals(oldArchiveConfig, newArchiveConfig)) {
       return true;
     }
 
-    //Name always not null
-    if(!newProject.getName().equals(oldProject.getName())) {
+    if(ReproducibleOutput.isEnabled(oldProject) != ReproducibleOutput.isEnabled(newProject)) {
       return true;
     }
 
-    String oldOrganizationName = oldProject.getOrganization() == null ? 
-    		null : oldProject.getOrganization().getName();
-    String newOrganizationName = newProject.getOrganization() == null ? 
-    		null : newProject.getOrganization().getName();
+    //Both archive configurations are the same, so they tell which other inputs can reach the manifest
 
-    if(newOrganizationName != null && !newOrganizationName.equals(oldOrganizationName) || oldOrganizationName != null
-        && newOrganizationName == null) {
+    //Only the dependencies which can be listed, and only if they're added to the manifest
+    boolean extensions = ManifestRelevance.isExtensionsRelevant(newArchiveConfig);
+    if(ManifestRelevance.isClasspathRelevant(newArchiveConfig)
+        && !ArtifactsHash.classpathEquals(oldProject.getArtifacts(), newProject.getArtifacts(), extensions)) {
       return true;
     }
-    return false;
-  }
 
-  /**
-   * Compare 2 lists of Artifacts for change
-   * @param artifacts the reference artifact list
-   * @param others the artifacts to compare to
-   * @return true if the 2 artifact lists are different
-   */
-  private boolean dependenciesChanged(List<Artifact> artifacts, List<Artifact> others) {
-    if(artifacts==others) {
-      return false;
-    }
-    if(artifacts.size() != others.size()) {
-      return true;
-    }
-    for(int i = 0; i < artifacts.size(); i++ ) {
-      Artifact dep = artifacts.get(i);
-      Artifact dep2 = others.get(i);
-      if(!areEqual(dep, dep2)) {
+    if(ManifestRelevance.isProjectInfoRelevant(newArchiveConfig)) {
+      if(isChanged(oldProject.getVersion(), newProject.getVersion())
+          || isChanged(oldProject.getGroupId(), newProject.getGroupId())
+          || isChanged(oldProject.getName(), newProject.getName())
+          || isChanged(oldProject.getUrl(), newProject.getUrl())) {
         return true;
       }
 
+      String oldOrganizationName = oldProject.getOrganization() == null ? 
+      		null : oldProject.getOrganization().getName();
+      String newOrganizationName = newProject.getOrganization() == null ? 
+      		null : newProject.getOrganization().getName();
+      if(isChanged(oldOrganizationName, newOrganizationName)) {
+        return true;
+      }
     }
     return false;
   }
 
-  @SuppressWarnings("null")
-  private boolean areEqual(Artifact dep, Artifact other) {
-    if(dep == other) {
-      return true;
-    }
-    if(dep == null && other != null || dep != null && other == null) {
-      return false;
-    }
-    //So both artifacts are not null here.
-    //Fast (to type) and easy way to compare artifacts. 
-    //Proper solution would not rely on internal implementation of toString
-    if(dep.toString().equals(other.toString()) && dep.isOptional() == other.isOptional()) {
-      return true;
-    }
-    return false;
+  private static boolean isChanged(String value, String other) {
+    return value == null ? other != null : !value.equals(other);
   }
 
+  /**
+   * Computes the fingerprint of all the manifest inputs of a project.
+   */
+  private String getManifestFingerprint(MavenProject mavenProject) {
+    return ManifestFingerprint.compute(mavenProject, mavenProject.getPlugin(getPluginKey()),
+        getArchiveConfiguration(mavenProject));
+  }
+
+  /**
+   * Gets the effective archive configuration of the project, that is the archive configuration of the plugin, 
+   * overridden by the one of the archiver goal execution, if any. The execution either declares the goal, or is the
+   * default lifecycle binding of the goal (e.g. default-jar), which inherits it.<br/>
+   * A merged configuration is kept in the project context, so the same tree, and its memoized hash, is returned for
+   * a given project state.
+   * @param mavenProject the maven project
+   * @return the archive configuration, or null if there's none
+   */
   protected Xpp3Dom getArchiveConfiguration(MavenProject mavenProject) {
     Plugin plugin = mavenProject.getPlugin(getPluginKey());
     if(plugin == null)
       return null;
 
     Xpp3Dom pluginConfig = (Xpp3Dom) plugin.getConfiguration();
-    if(pluginConfig == null) {
-      return null;
+    Xpp3Dom archiveConfig = pluginConfig == null ? null : pluginConfig.getChild(ARCHIVE_NODE);
+
+    String goal = getExecutionKey().getGoal();
+    for(PluginExecution execution : plugin.getExecutions()) {
+      Xpp3Dom executionConfig = (Xpp3Dom) execution.getConfiguration();
+      Xpp3Dom executionArchiveConfig = executionConfig == null ? null : executionConfig.getChild(ARCHIVE_NODE);
+      if(executionArchiveConfig != null
+          && (execution.getGoals().contains(goal) || ("default-" + goal).equals(execution.getId()))) {
+        //Only allocate a merged tree when needed, so unchanged configurations keep their memoized hash
+        return archiveConfig == null ? executionArchiveConfig : getMergedArchiveConfiguration(mavenProject,
+            executionArchiveConfig, archiveConfig);
+      }
+    }
+    return archiveConfig;
+  }
+
+  private Xpp3Dom getMergedArchiveConfiguration(MavenProject mavenProject, Xpp3Dom executionArchiveConfig,
+      Xpp3Dom archiveConfig) {
+    String key = MavenArchiverConstants.PLUGIN_ID + ".archiveConfiguration/" + getPluginKey() + ":"
+        + getExecutionKey().getGoal();
+    synchronized(mavenProject) {
+      Xpp3Dom merged = (Xpp3Dom) mavenProject.getContextValue(key);
+      if(merged == null) {
+        merged = Xpp3Dom.mergeXpp3Dom(new Xpp3Dom(executionArchiveConfig), archiveConfig);
+        mavenProject.setContextValue(key, merged);
+      }
+      return merged;
     }
-    return pluginConfig.getChild(ARCHIVE_NODE);
   }
 
   public void generateManifest(IMavenProjectFacade mavenFacade, IFile manifest, IProgressMonitor monitor)
       throws CoreException {
 
     MavenProject mavenProject = mavenFacade.getMavenProject();
-    Set<Artifact> originalArtifacts = mavenProject.getArtifacts();
-    boolean parentHierarchyLoaded = false;
     try {
       markerManager.deleteMarkers(mavenFacade.getPom(), MavenArchiverConstants.MAVENARCHIVER_MARKER_ERROR);
+
+      String fingerprint = getManifestFingerprint(mavenProject);
       
       //Find the mojoExecution
       MavenSession session = getMavenSession(mavenFacade, monitor);
-      
-      parentHierarchyLoaded = loadParentHierarchy(mavenFacade, monitor);
 
+      //The manifest is generated from the session snapshot, the shared project is never altered
+      MavenProject snapshot = session.getCurrentProject();
+
+      //The context ClassLoader is per thread, so concurrent generations don't interfere
       ClassLoader originalTCL = Thread.currentThread().getContextClassLoader();
       try {
         ClassRealm projectRealm = mavenProject.getClassRealm();
         if(projectRealm != null && projectRealm != originalTCL) {
           Thread.currentThread().setContextClassLoader(projectRealm);
         }
-        MavenExecutionPlan executionPlan = maven.calculateExecutionPlan(session, mavenProject,
-            Collections.singletonList("package"), true, monitor);
-        MojoExecution mojoExecution = getExecution(executionPlan, getExecutionKey());
+        MojoExecution mojoExecution = getMojoExecution(mavenFacade, session, monitor);
         if(mojoExecution == null) {
+          //Nothing to generate for these inputs
+          ManifestFingerprint.store(mavenFacade.getProject(), getPluginKey(), fingerprint);
           return;
         }
 
@@ -385,222 +632,361 @@ public abstract class AbstractMavenArchiverConfigurator extends AbstractProjectC
         IFolder destinationFolder = (IFolder) manifest.getParent();
         M2EUtils.createFolder(destinationFolder, true, monitor);
 
-        //Workspace project artifacts don't have a valid getFile(), so won't appear in the manifest
-        //We need to workaround the issue by creating  fake files for such artifacts. 
-        //We could also use a custom File implementation having "public boolean exists(){return true;}"
-        mavenProject.setArtifacts(fixArtifactFileNames(mavenFacade));
+        if(!generateNativeManifest(snapshot, mojoExecution, manifest, monitor)) {
+          //Invoke the manifest generation API via reflection
+          reflectManifestGeneration(mavenFacade.getProject(), snapshot, mojoExecution, session, manifest, monitor);
+        }
 
-        //Invoke the manifest generation API via reflection
-        reflectManifestGeneration(mavenProject, mojoExecution, session, new File(manifest.getLocation().toOSString()));
+        ManifestFingerprint.store(mavenFacade.getProject(), getPluginKey(), fingerprint);
       } finally {
         Thread.currentThread().setContextClassLoader(originalTCL);
       }
     } catch(Exception ex) {
       markerManager.addErrorMarkers(mavenFacade.getPom(), MavenArchiverConstants.MAVENARCHIVER_MARKER_ERROR,ex);
-      
-    } finally {
-      //Restore the project state
-      mavenProject.setArtifacts(originalArtifacts);
-      if (parentHierarchyLoaded) {
-    	  mavenProject.setParent(null);
-      }
     }
 
   }
   
+  /**
+   * Gets the archiver mojo execution of the project, only calculating the "package" execution plan if the plugin
+   * configuration changed since the last time it was resolved.
+   */
+  private MojoExecution getMojoExecution(IMavenProjectFacade mavenFacade, MavenSession session,
+      IProgressMonitor monitor) throws CoreException {
+    IProject project = mavenFacade.getProject();
+    MavenProject mavenProject = mavenFacade.getMavenProject();
+    String pluginKey = getPluginKey();
+    Plugin plugin = mavenProject.getPlugin(pluginKey);
+
+    MojoExecution mojoExecution = mojoExecutionCache.get(project, pluginKey, mavenProject.getPackaging(), plugin);
+    if(mojoExecution == null) {
+      //Calculated for the session project, so the cached session keeps the prepared snapshot as current project
+      MavenExecutionPlan executionPlan = maven.calculateExecutionPlan(session, session.getCurrentProject(),
+          Collections.singletonList("package"), true, monitor);
+      mojoExecution = getExecution(executionPlan, getExecutionKey());
+      if(mojoExecution != null) {
+        mojoExecutionCache.put(project, pluginKey, mavenProject.getPackaging(), plugin, mojoExecution);
+      }
+    }
+    return mojoExecution;
+  }
+
+  /**
+   * Gets the maven session of the project, only creating a new request + session if the project state, its resolver
+   * configuration, the offline mode or the settings changed since the last generation.<br/>
+   * The current project of the session is a snapshot of the facade project, prepared for the manifest generation.
+   */
   private MavenSession getMavenSession(IMavenProjectFacade mavenFacade, IProgressMonitor monitor)
       throws CoreException {
-    IMavenProjectRegistry projectManager = MavenPlugin.getMavenProjectRegistry();
+    IProject project = mavenFacade.getProject();
+    MavenProject mavenProject = mavenFacade.getMavenProject();
+    ResolverConfiguration resolverConfiguration = mavenFacade.getResolverConfiguration();
+    IMavenConfiguration mavenConfiguration = MavenPlugin.getMavenConfiguration();
+    boolean offline = mavenConfiguration.isOffline();
     IMaven maven = MavenPlugin.getMaven();
-    //Create a maven request + session
-    IFile pomResource = mavenFacade.getPom();
-    MavenExecutionRequest request = projectManager.createExecutionRequest(pomResource,
-        mavenFacade.getResolverConfiguration(), monitor);
-    request.setOffline(MavenPlugin.getMavenConfiguration().isOffline());
-    return maven.createSession(request, mavenFacade.getMavenProject());
+    String settings = MavenSessionCache.getSettingsSignature(mavenConfiguration.getUserSettingsFile(),
+        mavenConfiguration.getGlobalSettingsFile(), maven.getLocalRepositoryPath());
+
+    MavenSession session = sessionCache.get(project, mavenProject, resolverConfiguration, offline, settings);
+    if(session == null) {
+      IMavenProjectRegistry projectManager = MavenPlugin.getMavenProjectRegistry();
+      //Create a maven request + session
+      IFile pomResource = mavenFacade.getPom();
+      MavenExecutionRequest request = projectManager.createExecutionRequest(pomResource, resolverConfiguration,
+          monitor);
+      request.setOffline(offline);
+      session = maven.createSession(request, createSnapshot(mavenFacade, request, monitor));
+      if(!monitor.isCanceled()) {
+        sessionCache.put(project, mavenProject, resolverConfiguration, offline, settings, session);
+      }
+    }
+    return session;
   }
 
-  private void reflectManifestGeneration(MavenProject mavenProject, MojoExecution mojoExecution,
-		  MavenSession session, File manifestFile) throws Exception {
+  private void reflectManifestGeneration(IProject project, MavenProject mavenProject, MojoExecution mojoExecution,
+		  MavenSession session, IFile manifest, IProgressMonitor monitor) throws Exception {
 
-    ClassLoader loader = null;
-    Class<? extends Mojo> mojoClass;
-    Mojo mojo = null;
-
-    Xpp3Dom originalConfig = mojoExecution.getConfiguration();
-    Xpp3Dom customConfig = Xpp3DomUtils.mergeXpp3Dom(new Xpp3Dom("configuration"), originalConfig);
+    MojoExecution customExecution = getCustomExecution(project, mavenProject, mojoExecution);
+    Xpp3Dom customConfig = customExecution.getConfiguration();
 
-    //Add custom manifest entries
-    customizeManifest(customConfig, mavenProject);
-
-    mojoExecution.setConfiguration(customConfig);
-
-    mojo = maven.getConfiguredMojo(session, mojoExecution, Mojo.class);
-    mojoClass = mojo.getClass();
-    loader = mojoClass.getClassLoader();
-    PrintWriter printWriter = null;
+    Mojo mojo = configuredMojoCache.acquireMojo(project, customExecution, session);
+    if(mojo == null) {
+      mojo = maven.getConfiguredMojo(session, customExecution, Mojo.class);
+    }
 
+    boolean generated = false;
     try {
-      Field archiverField = findField(getArchiverFieldName(), mojoClass);
-      archiverField.setAccessible(true);
-      Object archiver = archiverField.get(mojo);
-
-      Field archiveConfigurationField = findField(getArchiveConfigurationFieldName(), mojoClass);
-      archiveConfigurationField.setAccessible(true);
-      Object archiveConfiguration = archiveConfigurationField.get(mojo);
-      Object mavenArchiver = getMavenArchiver(archiver, manifestFile, loader);
+      MavenArchiverReflection reflection = MavenArchiverReflection.get(mojo.getClass(), getArchiverFieldName(),
+          getArchiveConfigurationFieldName());
 
-      Method getManifest = mavenArchiver.getClass().getMethod("getManifest", MavenProject.class,
-          archiveConfiguration.getClass());
+      Object archiver = reflection.getArchiver(mojo);
+      Object archiveConfiguration = reflection.getArchiveConfiguration(mojo);
+      Object mavenArchiver = reflection.newMavenArchiver(archiver, manifest.getLocation().toFile());
 
       //Create the Manifest instance
-      Object manifest = getManifest.invoke(mavenArchiver, mavenProject, archiveConfiguration);
+      Object archiverManifest = reflection.getManifest(mavenArchiver, mavenProject, archiveConfiguration);
 
       //Get the user provided manifest, if it exists
-      Object userManifest = getProvidedManifest(manifest.getClass(), archiveConfiguration);
+      Object userManifest = getProvidedManifest(reflection, archiverManifest.getClass(), archiveConfiguration);
 
-      //Merge both manifests, the user provided manifest data takes precedence
-      mergeManifests(manifest, userManifest);
-      
-      //Serialize the Manifest instance to an actual file
-      Method write = manifest.getClass().getMethod("write", PrintWriter.class);
-      printWriter = new PrintWriter(WriterFactory.newWriter(manifestFile, WriterFactory.UTF_8));
-      write.invoke(manifest, printWriter);
+      //Older plexus-archiver manifests can't be altered, they'll only get normalized line endings
+      if(archiverManifest instanceof Manifest && ReproducibleOutput.isEnabled(mavenProject)) {
+        ReproducibleOutput.removeEnvironmentEntries((Manifest) archiverManifest,
+            getConfiguredEntries(customConfig, userManifest));
+      }
+
+      if(archiverManifest instanceof Manifest && (userManifest == null || userManifest instanceof Manifest)) {
+        //Merge both manifests while writing, the user provided manifest data takes precedence
+        writeIfChanged(manifest, ManifestWriter.write((Manifest) archiverManifest, (Manifest) userManifest), monitor);
+      } else {
+        //Merge both manifests, the user provided manifest data takes precedence
+        mergeManifests(archiverManifest, userManifest);
+
+        //Serialize the Manifest instance in memory, then to the actual file if its content changed
+        ByteArrayOutputStream buf = new ByteArrayOutputStream();
+        PrintWriter printWriter = new PrintWriter(new OutputStreamWriter(buf, WriterFactory.UTF_8));
+        try {
+          reflection.write(archiverManifest, printWriter);
+        } finally {
+          printWriter.close();
+        }
+        writeIfChanged(manifest, ReproducibleOutput.normalizeLineEndings(buf.toByteArray()), monitor);
+      }
+      generated = true;
       
     } finally {
-      if(printWriter != null) {
-        printWriter.close();
+      //Only keep the mojo if it was used successfully
+      if(generated) {
+        configuredMojoCache.releaseMojo(project, customExecution, session, mojo, maven);
+      } else {
+        maven.releaseMojo(mojo, customExecution);
       }
-      
-      mojoExecution.setConfiguration(originalConfig);
+    }
+  }
+
+  /**
+   * Gets a copy of the archiver execution, with the customized configuration. The copy is cached along with the
+   * execution configuration, so the customized configuration is only computed again when that configuration changes.
+   */
+  private MojoExecution getCustomExecution(IProject project, MavenProject mavenProject, MojoExecution mojoExecution)
+      throws CoreException {
+    Xpp3Dom originalConfig = mojoExecution.getConfiguration();
+    MojoExecution customExecution = configuredMojoCache.getExecution(project, mojoExecution);
+    if(customExecution == null) {
+      Xpp3Dom customConfig = Xpp3DomUtils.mergeXpp3Dom(new Xpp3Dom("configuration"), originalConfig);
+
+      //Add custom manifest entries
+      customizeManifest(customConfig, mavenProject);
+
+      customExecution = new MojoExecution(mojoExecution.getMojoDescriptor(), mojoExecution.getExecutionId(),
+          mojoExecution.getSource());
+      customExecution.setLifecyclePhase(mojoExecution.getLifecyclePhase());
+      customExecution.setConfiguration(customConfig);
+      configuredMojoCache.putExecution(project, mojoExecution, customExecution);
+    }
+    return customExecution;
+  }
+
+  /**
+   * Generates the manifest without configuring the archiver mojo, if the archiver and its configuration allow it.
+   * @return true if the manifest was generated, false if it must be generated by the archiver mojo.
+   */
+  private boolean generateNativeManifest(MavenProject mavenProject, MojoExecution mojoExecution, IFile manifestFile,
+      IProgressMonitor monitor) throws IOException, CoreException {
+    if("false".equals(System.getProperty(MavenArchiverConstants.NATIVE_MANIFEST_PROPERTY))
+        || !isNativeManifestSupported(mavenProject, mojoExecution)) {
+      return false;
+    }
+    Xpp3Dom customConfig = new Xpp3Dom("configuration");
+    //The configuration of the execution which actually runs, not the one guessed from the pom
+    Xpp3Dom executionConfig = mojoExecution.getConfiguration();
+    Xpp3Dom archiveConfig = executionConfig == null ? null : executionConfig.getChild(ARCHIVE_NODE);
+    if(archiveConfig != null) {
+      customConfig.addChild(new Xpp3Dom(archiveConfig));
+    }
+    customizeManifest(customConfig, mavenProject);
+
+    Manifest manifest = NativeManifestGenerator.generate(mavenProject, customConfig.getChild(ARCHIVE_NODE));
+    if(manifest == null) {
+      return false;
+    }
 
-      maven.releaseMojo(mojo, mojoExecution);
+    Manifest userManifest = readProvidedManifest(mavenProject, customConfig.getChild(ARCHIVE_NODE));
+
+    //The user provided entries are configured, so they're kept
+    if(ReproducibleOutput.isEnabled(mavenProject)) {
+      ReproducibleOutput.removeEnvironmentEntries(manifest, getConfiguredEntries(customConfig, userManifest));
     }
+
+    //Merge the user provided manifest while writing, it takes precedence
+    writeIfChanged(manifestFile, ManifestWriter.write(manifest, userManifest), monitor);
+    GenerationStatistics.generatedNatively();
+    return true;
+  }
+
+  /**
+   * Checks whether the manifest can be generated by {@link NativeManifestGenerator} for the given archiver execution,
+   * i.e. whether the archiver builds its manifest the way maven-archiver 2.5 does. Unsupported configurations are
+   * still detected afterwards, the archiver mojo is then used.<br/>
+   * Implementations should override this method to enable the native generation, it's disabled by default.
+   * @param mavenProject the maven project
+   * @param mojoExecution the archiver execution
+   * @return true if the manifest may be generated natively
+   */
+  protected boolean isNativeManifestSupported(MavenProject mavenProject, MojoExecution mojoExecution) {
+    return false;
+  }
+
+  /**
+   * @return the user provided manifest configured in archive/manifestFile, or null if there's none.
+   */
+  private Manifest readProvidedManifest(MavenProject mavenProject, Xpp3Dom archiveConfig) throws IOException {
+    File manifestFile = getProvidedManifestFile(mavenProject, archiveConfig);
+    if(manifestFile == null || !manifestFile.isFile() || !manifestFile.canRead()) {
+      return null;
+    }
+    return providedManifestCache.getManifest(manifestFile);
+  }
+
+  /**
+   * @return the user provided manifest file configured in archive/manifestFile, or null if there's none.
+   */
+  private static File getProvidedManifestFile(MavenProject mavenProject, Xpp3Dom archiveConfig) {
+    Xpp3Dom manifestFileNode = archiveConfig == null ? null : archiveConfig.getChild("manifestFile");
+    String path = manifestFileNode == null ? null : manifestFileNode.getValue();
+    if(path == null || path.trim().length() == 0) {
+      return null;
+    }
+    File manifestFile = new File(path.trim());
+    if(!manifestFile.isAbsolute()) {
+      manifestFile = new File(mavenProject.getBasedir(), path.trim());
+    }
+    return manifestFile;
+  }
+
+  /**
+   * @return the names of the main manifest entries explicitly set in the archive configuration or in the user
+   *         provided manifest.
+   */
+  private Set<String> getConfiguredEntries(Xpp3Dom configuration, Object userManifest) {
+    Set<String> entries = new HashSet<String>();
+    Xpp3Dom archiveNode = configuration == null ? null : configuration.getChild(ARCHIVE_NODE);
+    Xpp3Dom manifestEntriesNode = archiveNode == null ? null : archiveNode.getChild(MANIFEST_ENTRIES_NODE);
+    if(manifestEntriesNode != null) {
+      for(Xpp3Dom entry : manifestEntriesNode.getChildren()) {
+        entries.add(entry.getName());
+      }
+    }
+    if(userManifest instanceof Manifest) {
+      for(Object name : ((Manifest) userManifest).getMainAttributes().keySet()) {
+        entries.add(name.toString());
+      }
+    }
+    return entries;
+  }
+
+  /**
+   * Creates a private copy of the facade project, with its parent hierarchy loaded and its workspace artifacts fixed,
+   * so the generation never alters the project shared by the facade, and can safely run concurrently.
+   */
+  private MavenProject createSnapshot(IMavenProjectFacade facade, MavenExecutionRequest request,
+      IProgressMonitor monitor) throws CoreException {
+    MavenProject snapshot = facade.getMavenProject().clone();
+    loadParentHierarchy(snapshot, request, monitor);
+
+    //Workspace project artifacts don't have a valid getFile(), so won't appear in the manifest
+    //We need to workaround the issue by using fake files for such artifacts. 
+    snapshot.setArtifacts(fixArtifactFileNames(facade));
+    return snapshot;
   }
 
   /**
    * Workaround for https://bugs.eclipse.org/bugs/show_bug.cgi?id=356725. 
    * Loads the parent project hierarchy if needed.
-   * @param facade
+   * @param mavenProject the project snapshot to load the parents of
+   * @param request the execution request used to resolve the parent projects which aren't cached yet
    * @param monitor
-   * @return true if parent projects had to be loaded.
    * @throws CoreException
    */
-  private boolean loadParentHierarchy(IMavenProjectFacade facade, IProgressMonitor monitor) throws CoreException {
-    boolean loadedParent = false; 
-    MavenProject mavenProject = facade.getMavenProject();
+  private void loadParentHierarchy(MavenProject mavenProject, MavenExecutionRequest request,
+      IProgressMonitor monitor) throws CoreException {
     try {
       if (mavenProject.getModel().getParent() == null || mavenProject.getParent() != null) {
         //If the getParent() method is called without error,
         // we can assume the project has been fully loaded, no need to continue.
-        return false;
+        return;
       }
     } catch (IllegalStateException e) {
       //The parent can not be loaded properly 
     }
-    MavenExecutionRequest request = null;
+    String profiles = ParentProjectCache.getProfilesSignature(request.getActiveProfiles(),
+        request.getInactiveProfiles());
+    //The parents resolved here, cached once their ancestors are known
+    List<Parent> resolvedParents = new ArrayList<Parent>();
+    List<MavenProject> resolvedProjects = new ArrayList<MavenProject>();
+    List<Integer> resolvedLevels = new ArrayList<Integer>();
+    List<File> poms = new ArrayList<File>();
     while(mavenProject !=null && mavenProject.getModel().getParent() != null) {
       if(monitor.isCanceled()) {
         break;
       }
-      if (request == null) {
-        request = projectManager.createExecutionRequest(facade, monitor);
+      Parent parent = mavenProject.getModel().getParent();
+      MavenProject parentProject = parentProjectCache.get(parent, profiles);
+      if (parentProject == null) {
+        parentProject = maven.resolveParentProject(request, mavenProject, monitor);
+        if (parentProject != null && parentProject.getFile() != null) {
+          resolvedParents.add(parent);
+          resolvedProjects.add(parentProject);
+          resolvedLevels.add(Integer.valueOf(poms.size()));
+        }
       }
-      MavenProject parentProject = maven.resolveParentProject(request, mavenProject, monitor);
       if (parentProject != null) {
+        if(parentProject.getFile() != null) {
+          poms.add(parentProject.getFile());
+        }
+        //The cached parents are shared with the concurrent generations, only private copies are linked
+        parentProject = parentProject.clone();
         mavenProject.setParent(parentProject);
-        loadedParent = true;
       }
       mavenProject = parentProject;
     }
-    return loadedParent; 
-  }
-
-  private Object getProvidedManifest(Class manifestClass, Object archiveConfiguration) 
-      throws SecurityException, IllegalArgumentException, 
-            InstantiationException, IllegalAccessException, InvocationTargetException {
-
-    Object newManifest = null;
-    Reader reader = null;
-    try {
-      Method getManifestFile = archiveConfiguration.getClass().getMethod("getManifestFile");
-      File manifestFile = (File) getManifestFile.invoke(archiveConfiguration);
-      
-      if (manifestFile == null || !manifestFile.exists() || !manifestFile.canRead()) {
-        return null;
+    //The effective model of a parent depends on its own pom and on the ones of its ancestors, all resolved
+    if(mavenProject != null && !monitor.isCanceled()) {
+      for(int i = 0; i < resolvedParents.size(); i++ ) {
+        List<File> ancestry = poms.subList(resolvedLevels.get(i).intValue(), poms.size());
+        parentProjectCache.put(resolvedParents.get(i), profiles, resolvedProjects.get(i), ancestry);
       }
-
-      reader = new FileReader(manifestFile);
-      Constructor constructor = manifestClass.getConstructor(Reader.class);
-      newManifest = constructor.newInstance(reader);
-      
-    } catch(FileNotFoundException ex) {
-      //ignore
-    } catch(NoSuchMethodException ex) {
-      //ignore, this is not supported by this archiver version
-    } finally {
-      IOUtil.close(reader);
     }
-    return newManifest;
   }
 
-  private void mergeManifests(Object manifest, Object sourceManifest)
-      throws SecurityException, NoSuchMethodException,
-      IllegalArgumentException, IllegalAccessException,
-      InvocationTargetException {
-    if (sourceManifest == null)
-      return;
+  private Object getProvidedManifest(MavenArchiverReflection reflection, Class<?> manifestClass,
+      Object archiveConfiguration) throws IllegalArgumentException, InstantiationException, IllegalAccessException,
+      InvocationTargetException, IOException {
 
-    if (manifest instanceof Manifest && sourceManifest instanceof Manifest) {
-      merge((Manifest) manifest, (Manifest) sourceManifest, false);
-    } else {
-      // keep backward compatibility with old plexus-archiver versions prior to 2.1
-      Method merge = manifest.getClass().getMethod("merge",
-          sourceManifest.getClass());
-      merge.invoke(manifest, sourceManifest);
+    File manifestFile = reflection.getManifestFile(archiveConfiguration);
+    if (manifestFile == null || !manifestFile.exists() || !manifestFile.canRead()) {
+      return null;
     }
-  }
-  
-  /**
-   * @see org.codehaus.plexus.archiver.jar.JdkManifestFactory#merge()
-   */
-  private void merge(Manifest target, Manifest other, boolean overwriteMain) {
-    if (other != null) {
-      final Attributes mainAttributes = target.getMainAttributes();
-      if (overwriteMain) {
-        mainAttributes.clear();
-        mainAttributes.putAll(other.getMainAttributes());
-      } else {
-        mergeAttributes(mainAttributes, other.getMainAttributes());
-      }
 
-      for (Map.Entry<String, Attributes> o : other.getEntries()
-          .entrySet()) {
-        Attributes ourSection = target.getAttributes(o.getKey());
-        Attributes otherSection = o.getValue();
-        if (ourSection == null) {
-          if (otherSection != null) {
-            target.getEntries().put(o.getKey(),
-                (Attributes) otherSection.clone());
-          }
-        } else {
-          mergeAttributes(ourSection, otherSection);
-        }
-      }
+    try {
+      return providedManifestCache.getManifest(manifestFile, reflection, manifestClass);
+    } catch(FileNotFoundException ex) {
+      //ignore
+      return null;
     }
   }
 
   /**
-   * @see org.codehaus.plexus.archiver.jar.JdkManifestFactory#mergeAttributes()
+   * Merges the user provided manifest of older plexus-archiver versions (prior to 2.1), whose manifests aren't
+   * java.util.jar.Manifest instances. Newer manifests are merged while written, see {@link ManifestWriter}.
    */
-  private void mergeAttributes(java.util.jar.Attributes target,
-      java.util.jar.Attributes section) {
-    for (Object o : section.keySet()) {
-      java.util.jar.Attributes.Name key = (Attributes.Name) o;
-      final Object value = section.get(o);
-      // the merge file always wins
-      target.put(key, value);
-    }
+  private void mergeManifests(Object manifest, Object sourceManifest) throws SecurityException,
+      NoSuchMethodException, IllegalArgumentException, IllegalAccessException, InvocationTargetException {
+    if (sourceManifest == null)
+      return;
+
+    Method merge = manifest.getClass().getMethod("merge", sourceManifest.getClass());
+    merge.invoke(manifest, sourceManifest);
   }
 
   /**
@@ -617,33 +1003,9 @@ public abstract class AbstractMavenArchiverConfigurator extends AbstractProjectC
     return "archive";
   }
   
-  private Set<Artifact> fixArtifactFileNames(IMavenProjectFacade facade) throws IOException, CoreException {
-    Set<Artifact> artifacts = facade.getMavenProject().getArtifacts();
-    if(artifacts == null)
-      return null;
-    Set<Artifact> newArtifacts = new LinkedHashSet<Artifact>(artifacts.size());
-
-    ArtifactRepository localRepo = MavenPlugin.getMaven().getLocalRepository();
-    
-    for(Artifact a : artifacts) {
-      Artifact artifact;
-      if(a.getFile().isDirectory() || "pom.xml".equals(a.getFile().getName())) {
-        //Workaround Driven Development : Create a dummy file associated with an Artifact, 
-        // so this artifact won't be ignored during the resolution of the Class-Path entry in the Manifest
-        artifact = new DefaultArtifact( a.getGroupId(), 
-        								a.getArtifactId(), 
-        								a.getVersion(), 
-        								a.getScope(), 
-        								a.getType(),
-            a.getClassifier(), a.getArtifactHandler());
-        artifact.setFile(fakeFile(localRepo, a));
-      } else {
-        artifact = a;
-      }
-
-      newArtifacts.add(artifact);
-    }
-    return newArtifacts;
+  private Set<Artifact> fixArtifactFileNames(IMavenProjectFacade facade) throws CoreException {
+    return WorkspaceArtifactFiles.fix(facade.getProject(), facade.getMavenProject().getArtifacts(),
+        MavenPlugin.getMaven().getLocalRepository());
   }
 
   private void customizeManifest(Xpp3Dom customConfig, MavenProject mavenProject) throws CoreException {
@@ -670,31 +1032,6 @@ public abstract class AbstractMavenArchiverConfigurator extends AbstractProjectC
     }
   }
 
-  private Field findField(String name, Class<?> clazz) {
-    return ReflectionUtils.getFieldByNameIncludingSuperclasses(name, clazz);
-  }
-
-  private Object getMavenArchiver(Object archiver, File manifestFile, ClassLoader loader)
-      throws ClassNotFoundException, InstantiationException, IllegalAccessException, SecurityException,
-      NoSuchMethodException, IllegalArgumentException, InvocationTargetException {
-    Class<Object> mavenArchiverClass = (Class<Object>) Class.forName(MAVEN_ARCHIVER_CLASS, false, loader);
-    Object mavenArchiver = mavenArchiverClass.newInstance();
-
-    Method setArchiver = null;
-    //TODO do a proper lookup
-    for(Method m : mavenArchiver.getClass().getMethods()) {
-      if("setArchiver".equals(m.getName())) {
-        setArchiver = m;
-        break;
-      }
-    }
-
-    setArchiver.invoke(mavenArchiver, archiver);
-    Method setOutputFile = mavenArchiverClass.getMethod("setOutputFile", File.class);
-    setOutputFile.invoke(mavenArchiver, manifestFile);
-    return mavenArchiver;
-  }
-
   private String getPluginKey() {
     MojoExecutionKey execution = getExecutionKey();
     return execution.getGroupId() + ":" + execution.getArtifactId();
@@ -711,29 +1048,17 @@ public abstract class AbstractMavenArchiverConfigurator extends AbstractProjectC
     return null;
   }
 
-  /**
-   * Generates a temporary file in the system temporary folder for a given artifact
-   * @param localRepo the local repository used to compute the file path
-   * @param artifact the artifact to generate a temporary file for
-   * @return a temporary file sitting under ${"java.io.tmpdir"}/fakerepo/${groupid}/{artifactid}/${version}/
-   * @throws IOException if the file could not be created
-   */
-  private File fakeFile(ArtifactRepository localRepo, Artifact artifact) throws IOException {
-    File fakeRepo = new File(System.getProperty("java.io.tmpdir"), "fakerepo");
-  
-    File fakeFile = new File(fakeRepo, localRepo.pathOf(artifact));
-    File parent = fakeFile.getParentFile();
-    if(!parent.exists()) {
-        parent.mkdirs();
-    }
-    
-    if(!fakeFile.exists()) {
-      fakeFile.createNewFile();
-    }
-    return fakeFile;
+  protected void writePom(final IMavenProjectFacade facade, IProgressMonitor monitor) throws CoreException {
+    //Both files are written in a single workspace operation
+    IWorkspaceRunnable write = new IWorkspaceRunnable() {
+      public void run(IProgressMonitor monitor) throws CoreException {
+        writePomFiles(facade, monitor);
+      }
+    };
+    ResourcesPlugin.getWorkspace().run(write, facade.getProject(), 0, monitor);
   }
-  
-  protected void writePom(IMavenProjectFacade facade, IProgressMonitor monitor) throws CoreException {
+
+  private void writePomFiles(IMavenProjectFacade facade, IProgressMonitor monitor) throws CoreException {
     IProject project = facade.getProject();
     ArtifactKey mavenProject = facade.getArtifactKey();
     IWorkspaceRoot root = project.getWorkspace().getRoot();
@@ -752,28 +1077,42 @@ public abstract class AbstractMavenArchiverConfigurator extends AbstractProjectC
     properties.put("m2e.projectLocation", project.getLocation().toOSString());
 
     IFile pomProperties = output.getFile("pom.properties");
-    ByteArrayOutputStream buf = new ByteArrayOutputStream();
     try {
-      properties.store(buf, GENERATED_BY_M2E);
+      writeIfChanged(pomProperties, ReproducibleOutput.storeProperties(properties, GENERATED_BY_M2E), monitor);
     } catch(IOException ex) {
-    }
-
-    if(pomProperties.exists()) {
-      pomProperties.setContents(new ByteArrayInputStream(buf.toByteArray()), IResource.FORCE, monitor);
-    } else {
-      pomProperties.create(new ByteArrayInputStream(buf.toByteArray()), IResource.FORCE, monitor);
+      throw new CoreException(new Status(IStatus.ERROR, MavenArchiverConstants.PLUGIN_ID, "Unable to write "
+          + pomProperties, ex));
     }
 
     IFile pom = output.getFile("pom.xml");
     InputStream is = facade.getPom().getContents();
+    byte[] pomContent;
     try {
-      if(pom.exists()) {
-        pom.setContents(is, IResource.FORCE, monitor);
-      } else {
-        pom.create(is, IResource.FORCE, monitor);
-      }
+      pomContent = IOUtil.toByteArray(is);
+    } catch(IOException ex) {
+      throw new CoreException(new Status(IStatus.ERROR, MavenArchiverConstants.PLUGIN_ID, "Unable to read "
+          + facade.getPom(), ex));
     } finally {
       IOUtil.close(is);
     }
+    writeIfChanged(pom, pomContent, monitor);
+  }
+
+  /**
+   * Writes the content to the workspace file, unless the file already has the exact same content.
+   * @return true if the file was written
+   */
+  private boolean writeIfChanged(IFile file, byte[] content, IProgressMonitor monitor) throws CoreException {
+    if(file.exists()) {
+      if(ContentDigest.hasContent(file, content)) {
+        GenerationStatistics.skipped();
+        return false;
+      }
+      file.setContents(new ByteArrayInputStream(content), IResource.FORCE, monitor);
+    } else {
+      file.create(new ByteArrayInputStream(content), IResource.FORCE, monitor);
+    }
+    GenerationStatistics.written();
+    return true;
   }
 }
@@ -0,0 +1,122 @@
+/*******************************************************************************
+ * Copyright (c) 2008 Sonatype, Inc.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************/
+
+package org.sonatype.m2e.mavenarchiver.internal;
+
+import java.util.Collection;
+import java.util.Iterator;
+
+import org.apache.maven.artifact.Artifact;
+
+/**
+ * 64 bits hash of the coordinates of the artifacts of a collection which can appear in a manifest, computed without
+ * building any string.<br/>
+ * The hash depends on the iteration order, as the Class-Path manifest entry follows it. Hashes are memoized by
+ * collection instance, as the artifact sets of a given project state are never modified, separately with and without
+ * the Extension-List. As hashes may collide, and a memoized collection could still be modified, they're only used to
+ * reject different collections, never to accept equal ones.
+ */
+class ArtifactsHash {
+
+  private static final StructuralHash.Memo classpathMemo = new StructuralHash.Memo(256);
+
+  private static final StructuralHash.Memo extensionsMemo = new StructuralHash.Memo(256);
+
+  private ArtifactsHash() {
+    // prevent instantiation.
+  }
+
+  /**
+   * @param extensions whether the Extension-List entry is generated too
+   * @return the hash of the coordinates of the artifacts which can appear in the manifest, 0 for null.
+   * @see ManifestRelevance#isClasspathEligible(Artifact, boolean)
+   */
+  static long classpathHash(Collection<Artifact> artifacts, boolean extensions) {
+    if(artifacts == null) {
+      return 0;
+    }
+    StructuralHash.Memo memo = extensions ? extensionsMemo : classpathMemo;
+    Long hash = memo.get(artifacts);
+    if(hash == null) {
+      long h = StructuralHash.SEED;
+      for(Artifact a : artifacts) {
+        if(a != null && ManifestRelevance.isClasspathEligible(a, extensions)) {
+          h = update(h, a);
+        }
+      }
+      hash = Long.valueOf(h);
+      memo.put(artifacts, h);
+    }
+    return hash.longValue();
+  }
+
+  /**
+   * @return true if both collections contain the same artifacts which can appear in the manifest, in the same order.
+   *         Collections with different hashes are rejected without being compared.
+   */
+  static boolean classpathEquals(Collection<Artifact> artifacts, Collection<Artifact> others, boolean extensions) {
+    if(artifacts == others) {
+      return true;
+    }
+    if(artifacts == null || others == null
+        || classpathHash(artifacts, extensions) != classpathHash(others, extensions)) {
+      return false;
+    }
+    //Matching hashes may still be a collision
+    Iterator<Artifact> it = artifacts.iterator();
+    Iterator<Artifact> otherIt = others.iterator();
+    Artifact a = next(it, extensions);
+    Artifact other = next(otherIt, extensions);
+    while(a != null && other != null) {
+      if(!coordinatesEqual(a, other)) {
+        return false;
+      }
+      a = next(it, extensions);
+      other = next(otherIt, extensions);
+    }
+    return a == null && other == null;
+  }
+
+  /**
+   * @return the next artifact which can appear in the manifest, or null if there's none left.
+   */
+  private static Artifact next(Iterator<Artifact> it, boolean extensions) {
+    while(it.hasNext()) {
+      Artifact a = it.next();
+      if(a != null && ManifestRelevance.isClasspathEligible(a, extensions)) {
+        return a;
+      }
+    }
+    return null;
+  }
+
+  private static boolean coordinatesEqual(Artifact a, Artifact other) {
+    return equals(a.getGroupId(), other.getGroupId()) && equals(a.getArtifactId(), other.getArtifactId())
+        && equals(a.getVersion(), other.getVersion()) && equals(a.getBaseVersion(), other.getBaseVersion())
+        && equals(a.getType(), other.getType()) && equals(a.getClassifier(), other.getClassifier())
+        && equals(a.getScope(), other.getScope()) && a.isOptional() == other.isOptional();
+  }
+
+  private static boolean equals(String value, String other) {
+    return value == null ? other == null : value.equals(other);
+  }
+
+  private static long update(long hash, Artifact a) {
+    if(a == null) {
+      return StructuralHash.update(hash, -1);
+    }
+    hash = StructuralHash.update(hash, a.getGroupId());
+    hash = StructuralHash.update(hash, a.getArtifactId());
+    hash = StructuralHash.update(hash, a.getVersion());
+    hash = StructuralHash.update(hash, a.getBaseVersion());
+    hash = StructuralHash.update(hash, a.getType());
+    hash = StructuralHash.update(hash, a.getClassifier());
+    hash = StructuralHash.update(hash, a.getScope());
+    return StructuralHash.update(hash, a.isOptional());
+  }
+}
@@ -0,0 +1,132 @@
+/*******************************************************************************
+ * Copyright (c) 2008 Sonatype, Inc.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************/
+
+package org.sonatype.m2e.mavenarchiver.internal;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.apache.maven.artifact.Artifact;
+import org.eclipse.core.resources.IProject;
+import org.eclipse.m2e.core.embedder.ArtifactKey;
+
+/**
+ * Reverse index of the manifest Class-Path entries : for each artifact, the projects whose generated manifest
+ * references it, with the configurator generating that manifest.<br/>
+ * When a workspace project changes its coordinates or is removed, exactly the manifests referencing its previous
+ * artifact need to be generated again. Artifacts are indexed by groupId, artifactId and base version, so any
+ * classifier of the artifact matches.
+ */
+class ClassPathIndex {
+
+  private final Map<ArtifactKey, Map<List<Object>, Dependent>> dependents =
+      new HashMap<ArtifactKey, Map<List<Object>, Dependent>>();
+
+  private final Map<List<Object>, Set<ArtifactKey>> references = new HashMap<List<Object>, Set<ArtifactKey>>();
+
+  /**
+   * Replaces the artifacts referenced by the manifest the configurator generates for the project.
+   * @param artifacts the dependencies of the project, or null if its manifest has no Class-Path
+   * @param extensions whether the manifest has an Extension-List too
+   */
+  synchronized void update(AbstractMavenArchiverConfigurator configurator, IProject project,
+      Collection<Artifact> artifacts, boolean extensions) {
+    Set<ArtifactKey> keys = new HashSet<ArtifactKey>();
+    if(artifacts != null) {
+      for(Artifact artifact : artifacts) {
+        if(ManifestRelevance.isClasspathEligible(artifact, extensions)) {
+          keys.add(getKey(artifact.getGroupId(), artifact.getArtifactId(), artifact.getBaseVersion()));
+        }
+      }
+    }
+    List<Object> dependentKey = getKey(configurator, project);
+    if(keys.equals(references.get(dependentKey))) {
+      return;
+    }
+    remove(dependentKey);
+    if(keys.isEmpty()) {
+      return;
+    }
+    references.put(dependentKey, keys);
+    Dependent dependent = new Dependent(configurator, project);
+    for(ArtifactKey key : keys) {
+      Map<List<Object>, Dependent> projects = dependents.get(key);
+      if(projects == null) {
+        projects = new LinkedHashMap<List<Object>, Dependent>();
+        dependents.put(key, projects);
+      }
+      projects.put(dependentKey, dependent);
+    }
+  }
+
+  /**
+   * @return the projects, with their configurator, whose manifest references the given artifact.
+   */
+  synchronized List<Dependent> getDependents(ArtifactKey artifactKey) {
+    Map<List<Object>, Dependent> projects = dependents.get(getKey(artifactKey.getGroupId(),
+        artifactKey.getArtifactId(), artifactKey.getVersion()));
+    if(projects == null) {
+      return Collections.emptyList();
+    }
+    return new ArrayList<Dependent>(projects.values());
+  }
+
+  /**
+   * Forgets the manifests of the project, e.g. when it's removed.
+   */
+  synchronized void remove(IProject project) {
+    for(List<Object> dependentKey : new ArrayList<List<Object>>(references.keySet())) {
+      if(dependentKey.get(0).equals(project)) {
+        remove(dependentKey);
+      }
+    }
+  }
+
+  private void remove(List<Object> dependentKey) {
+    Set<ArtifactKey> keys = references.remove(dependentKey);
+    if(keys == null) {
+      return;
+    }
+    for(ArtifactKey key : keys) {
+      Map<List<Object>, Dependent> projects = dependents.get(key);
+      if(projects != null) {
+        projects.remove(dependentKey);
+        if(projects.isEmpty()) {
+          dependents.remove(key);
+        }
+      }
+    }
+  }
+
+  private static List<Object> getKey(AbstractMavenArchiverConfigurator configurator, IProject project) {
+    return Arrays.<Object> asList(project, configurator.getClass());
+  }
+
+  private static ArtifactKey getKey(String groupId, String artifactId, String version) {
+    return new ArtifactKey(groupId, artifactId, version, null);
+  }
+
+  static class Dependent {
+    final AbstractMavenArchiverConfigurator configurator;
+
+    final IProject project;
+
+    Dependent(AbstractMavenArchiverConfigurator configurator, IProject project) {
+      this.configurator = configurator;
+      this.project = project;
+    }
+  }
+}
@@ -0,0 +1,146 @@
+/*******************************************************************************
+ * Copyright (c) 2008 Sonatype, Inc.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************/
+
+package org.sonatype.m2e.mavenarchiver.internal;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import org.apache.maven.execution.MavenSession;
+import org.apache.maven.plugin.Mojo;
+import org.apache.maven.plugin.MojoExecution;
+import org.apache.maven.plugin.descriptor.MojoDescriptor;
+import org.codehaus.plexus.util.xml.Xpp3Dom;
+import org.eclipse.core.resources.IProject;
+import org.eclipse.core.runtime.CoreException;
+import org.eclipse.m2e.core.embedder.IMaven;
+
+/**
+ * Per project cache of the customized archiver execution, and of the last mojo configured from it.<br/>
+ * The customized execution is a private copy of the shared archiver execution, so the latter never needs to be
+ * altered. It's kept as long as the mojo descriptor and id of the shared execution and its configuration don't
+ * change, so it survives the resolution of a new shared execution for the same mojo, whatever the lifetime of the
+ * mojos configured from it.<br/>
+ * The configured mojo is only reused with the very same session, i.e. for the same project state. It's handed out to
+ * a single generation at a time, and released when the session of the project is replaced.
+ */
+class ConfiguredMojoCache {
+
+  private final Map<IProject, ExecutionEntry> executions = new HashMap<IProject, ExecutionEntry>();
+
+  private final Map<IProject, MojoEntry> mojos = new HashMap<IProject, MojoEntry>();
+
+  /**
+   * @return the customized copy of the execution, or null if there's none for this execution and configuration.
+   */
+  synchronized MojoExecution getExecution(IProject project, MojoExecution execution) {
+    ExecutionEntry entry = executions.get(project);
+    if(entry == null) {
+      return null;
+    }
+    if(entry.mojoDescriptor != execution.getMojoDescriptor()
+        || !entry.executionId.equals(execution.getExecutionId())
+        || !Xpp3DomHash.equals(entry.configuration, execution.getConfiguration())) {
+      executions.remove(project);
+      return null;
+    }
+    return entry.execution;
+  }
+
+  synchronized void putExecution(IProject project, MojoExecution execution, MojoExecution customExecution) {
+    executions.put(project, new ExecutionEntry(execution, customExecution));
+  }
+
+  /**
+   * Takes the mojo previously configured from the customized execution for the given session.
+   * @return the configured mojo, or null if there's none available.
+   */
+  synchronized Mojo acquireMojo(IProject project, MojoExecution customExecution, MavenSession session) {
+    MojoEntry entry = mojos.get(project);
+    if(entry == null || entry.execution != customExecution || entry.session != session) {
+      return null;
+    }
+    mojos.remove(project);
+    return entry.mojo;
+  }
+
+  /**
+   * Gives back a mojo configured from the customized execution, so it can be reused by the next generation. It
+   * replaces the previously cached mojo of the project, if any.
+   */
+  synchronized void releaseMojo(IProject project, MojoExecution customExecution, MavenSession session, Mojo mojo,
+      IMaven maven) {
+    ExecutionEntry execution = executions.get(project);
+    if(execution == null || execution.execution != customExecution) {
+      //Configured from an execution which isn't cached anymore
+      release(mojo, customExecution, maven);
+      return;
+    }
+    MojoEntry previous = mojos.put(project, new MojoEntry(customExecution, session, mojo));
+    if(previous != null) {
+      release(previous.mojo, previous.execution, maven);
+    }
+  }
+
+  /**
+   * Releases the configured mojo of the project, e.g. when its session is replaced, but keeps its customized
+   * execution.
+   */
+  synchronized void removeMojo(IProject project, IMaven maven) {
+    MojoEntry entry = mojos.remove(project);
+    if(entry != null) {
+      release(entry.mojo, entry.execution, maven);
+    }
+  }
+
+  synchronized void remove(IProject project, IMaven maven) {
+    executions.remove(project);
+    removeMojo(project, maven);
+  }
+
+  static void release(Mojo mojo, MojoExecution execution, IMaven maven) {
+    try {
+      maven.releaseMojo(mojo, execution);
+    } catch(CoreException ex) {
+      //The mojo is not used anymore, nothing more can be done
+    }
+  }
+
+  private static class ExecutionEntry {
+    final MojoDescriptor mojoDescriptor;
+
+    final String executionId;
+
+    final Xpp3Dom configuration;
+
+    final MojoExecution execution;
+
+    ExecutionEntry(MojoExecution sourceExecution, MojoExecution execution) {
+      this.mojoDescriptor = sourceExecution.getMojoDescriptor();
+      this.executionId = sourceExecution.getExecutionId();
+      //Copied, so it can't be modified along with the shared execution
+      Xpp3Dom sourceConfiguration = sourceExecution.getConfiguration();
+      this.configuration = sourceConfiguration == null ? null : new Xpp3Dom(sourceConfiguration);
+      this.execution = execution;
+    }
+  }
+
+  private static class MojoEntry {
+    final MojoExecution execution;
+
+    final MavenSession session;
+
+    final Mojo mojo;
+
+    MojoEntry(MojoExecution execution, MavenSession session, Mojo mojo) {
+      this.execution = execution;
+      this.session = session;
+      this.mojo = mojo;
+    }
+  }
+}
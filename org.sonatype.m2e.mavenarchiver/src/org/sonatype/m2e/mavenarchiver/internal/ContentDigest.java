@@ -0,0 +1,77 @@
+/*******************************************************************************
+ * Copyright (c) 2008 Sonatype, Inc.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************/
+
+package org.sonatype.m2e.mavenarchiver.internal;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+import org.codehaus.plexus.util.IOUtil;
+import org.eclipse.core.resources.IFile;
+import org.eclipse.core.runtime.CoreException;
+import org.eclipse.core.runtime.IPath;
+
+/**
+ * Content digest helpers, used to detect whether a generated file actually needs to be written.
+ */
+class ContentDigest {
+
+  private static final String ALGORITHM = "SHA-1";
+
+  private ContentDigest() {
+    // prevent instantiation.
+  }
+
+  static byte[] digest(byte[] content) {
+    MessageDigest digest = newDigest();
+    digest.update(content);
+    return digest.digest();
+  }
+
+  static byte[] digest(InputStream is) throws IOException {
+    MessageDigest digest = newDigest();
+    byte[] buffer = new byte[8192];
+    int n;
+    while((n = is.read(buffer)) != -1) {
+      digest.update(buffer, 0, n);
+    }
+    return digest.digest();
+  }
+
+  /**
+   * @return true if the workspace file exists and its content has the same digest as the given content.
+   */
+  static boolean hasContent(IFile file, byte[] content) {
+    IPath location = file.getLocation();
+    if(!file.exists() || location != null && location.toFile().length() != content.length) {
+      return false;
+    }
+    InputStream is = null;
+    try {
+      is = file.getContents(true);
+      return MessageDigest.isEqual(digest(content), digest(is));
+    } catch(CoreException ex) {
+      return false;
+    } catch(IOException ex) {
+      return false;
+    } finally {
+      IOUtil.close(is);
+    }
+  }
+
+  private static MessageDigest newDigest() {
+    try {
+      return MessageDigest.getInstance(ALGORITHM);
+    } catch(NoSuchAlgorithmException ex) {
+      //SHA-1 is required on every Java platform
+      throw new IllegalStateException(ex);
+    }
+  }
+}
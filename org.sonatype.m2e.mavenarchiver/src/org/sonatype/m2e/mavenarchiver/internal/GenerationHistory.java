@@ -0,0 +1,156 @@
+/*******************************************************************************
+ * Copyright (c) 2008 Sonatype, Inc.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************/
+
+package org.sonatype.m2e.mavenarchiver.internal;
+
+import java.lang.ref.WeakReference;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.maven.project.MavenProject;
+import org.eclipse.core.resources.IFile;
+import org.eclipse.core.resources.IProject;
+import org.eclipse.core.resources.IResource;
+
+/**
+ * In memory record of the last generation of each project : the fingerprints of the manifest inputs, the generated
+ * Class-Path and the modification stamp of the generated manifest, the modification stamp of the pom copied to the
+ * output folder, and the project state of the last complete build.<br/>
+ * A single change usually triggers several generations (project change event, then build participant). They're
+ * coalesced by dropping any trigger whose inputs and outputs are identical to the ones of the last generation.<br/>
+ * When only the dependencies changed since the last generation, the recorded Class-Path tells whether the manifest
+ * can be patched instead of generated again.<br/>
+ * Builds of an already built project state, whose delta doesn't touch any input or output, return right away.<br/>
+ * Entries are kept per project and archiver plugin, like the persisted fingerprints, so several archiver
+ * configurators of a project don't overwrite each other.
+ */
+class GenerationHistory {
+
+  private final Map<List<Object>, Entry> entries = new HashMap<List<Object>, Entry>();
+
+  /**
+   * @return true if the manifest was generated from the same inputs, and wasn't modified since.
+   */
+  synchronized boolean isManifestCurrent(IProject project, String pluginKey, String fingerprint, IFile manifest) {
+    Entry entry = entries.get(getKey(project, pluginKey));
+    return entry != null && entry.fingerprint != null && entry.fingerprint.equals(fingerprint) && manifest.exists()
+        && entry.manifestStamp == manifest.getModificationStamp();
+  }
+
+  /**
+   * @return the Class-Path of the last generated manifest, if it was generated from the same inputs but the
+   *         dependencies and wasn't modified since, otherwise null.
+   */
+  synchronized String getPatchableClassPath(IProject project, String pluginKey,
+      String fingerprintWithoutDependencies, IFile manifest) {
+    Entry entry = entries.get(getKey(project, pluginKey));
+    if(entry == null || entry.classPath == null || !fingerprintWithoutDependencies.equals(entry.baseFingerprint)
+        || !manifest.exists() || entry.manifestStamp != manifest.getModificationStamp()) {
+      return null;
+    }
+    return entry.classPath;
+  }
+
+  /**
+   * Records a successful generation.
+   * @param classPath the Class-Path of the manifest, if it can be patched, otherwise null
+   */
+  synchronized void manifestGenerated(IProject project, String pluginKey, String fingerprint,
+      String fingerprintWithoutDependencies, String classPath, IFile manifest) {
+    Entry entry = getEntry(project, pluginKey);
+    entry.fingerprint = fingerprint;
+    entry.baseFingerprint = fingerprintWithoutDependencies;
+    entry.classPath = classPath;
+    entry.manifestStamp = manifest.getModificationStamp();
+  }
+
+  /**
+   * @return true if the output pom was written from the same pom, unmodified since.
+   */
+  synchronized boolean isPomCurrent(IProject project, String pluginKey, IFile pom) {
+    Entry entry = entries.get(getKey(project, pluginKey));
+    return entry != null && entry.pomStamp == pom.getModificationStamp();
+  }
+
+  synchronized void pomWritten(IProject project, String pluginKey, IFile pom) {
+    getEntry(project, pluginKey).pomStamp = pom.getModificationStamp();
+  }
+
+  /**
+   * @return true if the last complete build of the project was for the very same project state.
+   */
+  synchronized boolean isBuilt(IProject project, String pluginKey, MavenProject mavenProject) {
+    Entry entry = entries.get(getKey(project, pluginKey));
+    return entry != null && entry.builtProject != null && entry.builtProject.get() == mavenProject;
+  }
+
+  /**
+   * Records a complete build, i.e. all the files are generated from the given project state.
+   */
+  synchronized void built(IProject project, String pluginKey, MavenProject mavenProject) {
+    getEntry(project, pluginKey).builtProject = new WeakReference<MavenProject>(mavenProject);
+  }
+
+  /**
+   * Marks the manifest as stale, while keeping its Class-Path so it can still be patched : its inputs didn't change,
+   * but it must be generated again.
+   */
+  synchronized void invalidate(IProject project, String pluginKey) {
+    Entry entry = entries.get(getKey(project, pluginKey));
+    if(entry != null) {
+      entry.fingerprint = null;
+      entry.builtProject = null;
+    }
+  }
+
+  /**
+   * Forgets the generations of the project, for all the archiver plugins, e.g. when it's removed.
+   */
+  synchronized void remove(IProject project) {
+    for(Iterator<List<Object>> it = entries.keySet().iterator(); it.hasNext();) {
+      if(it.next().get(0).equals(project)) {
+        it.remove();
+      }
+    }
+  }
+
+  synchronized void remove(IProject project, String pluginKey) {
+    entries.remove(getKey(project, pluginKey));
+  }
+
+  private Entry getEntry(IProject project, String pluginKey) {
+    List<Object> key = getKey(project, pluginKey);
+    Entry entry = entries.get(key);
+    if(entry == null) {
+      entry = new Entry();
+      entries.put(key, entry);
+    }
+    return entry;
+  }
+
+  private static List<Object> getKey(IProject project, String pluginKey) {
+    return Arrays.<Object> asList(project, pluginKey);
+  }
+
+  private static class Entry {
+    String fingerprint;
+
+    String baseFingerprint;
+
+    String classPath;
+
+    long manifestStamp = IResource.NULL_STAMP;
+
+    long pomStamp = IResource.NULL_STAMP;
+
+    WeakReference<MavenProject> builtProject;
+  }
+}
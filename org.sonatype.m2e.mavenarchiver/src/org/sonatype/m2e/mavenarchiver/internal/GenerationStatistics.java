@@ -0,0 +1,111 @@
+/*******************************************************************************
+ * Copyright (c) 2008 Sonatype, Inc.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************/
+
+package org.sonatype.m2e.mavenarchiver.internal;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Counts the files written by the mavenarchiver configurators, the writes skipped because the generated content
+ * was identical to the existing file, the manifest updates actually run, the generations dropped because they
+ * duplicated the previous one, and the manifests only patched because nothing but their Class-Path changed, and the
+ * manifests generated without the archiver mojo.
+ */
+public final class GenerationStatistics {
+
+  private static final AtomicLong writes = new AtomicLong();
+
+  private static final AtomicLong skippedWrites = new AtomicLong();
+
+  private static final AtomicLong manifestUpdates = new AtomicLong();
+
+  private static final AtomicLong coalescedGenerations = new AtomicLong();
+
+  private static final AtomicLong patchedManifests = new AtomicLong();
+
+  private static final AtomicLong nativeManifests = new AtomicLong();
+
+  private GenerationStatistics() {
+    // prevent instantiation.
+  }
+
+  /**
+   * @return the number of generated files actually written to disk.
+   */
+  public static long getWrites() {
+    return writes.get();
+  }
+
+  /**
+   * @return the number of generated files left untouched because their content didn't change.
+   */
+  public static long getSkippedWrites() {
+    return skippedWrites.get();
+  }
+
+  /**
+   * @return the number of manifests generated or patched, whether their content changed or not.
+   */
+  public static long getManifestUpdates() {
+    return manifestUpdates.get();
+  }
+
+  /**
+   * @return the number of generations dropped because their inputs and outputs didn't change since the last one.
+   */
+  public static long getCoalescedGenerations() {
+    return coalescedGenerations.get();
+  }
+
+  /**
+   * @return the number of manifests whose Class-Path was patched instead of generating the whole manifest.
+   */
+  public static long getPatchedManifests() {
+    return patchedManifests.get();
+  }
+
+  /**
+   * @return the number of manifests generated natively, without configuring the archiver mojo.
+   */
+  public static long getNativeManifests() {
+    return nativeManifests.get();
+  }
+
+  public static void reset() {
+    writes.set(0);
+    skippedWrites.set(0);
+    manifestUpdates.set(0);
+    coalescedGenerations.set(0);
+    patchedManifests.set(0);
+    nativeManifests.set(0);
+  }
+
+  static void written() {
+    writes.incrementAndGet();
+  }
+
+  static void skipped() {
+    skippedWrites.incrementAndGet();
+  }
+
+  static void updated() {
+    manifestUpdates.incrementAndGet();
+  }
+
+  static void coalesced() {
+    coalescedGenerations.incrementAndGet();
+  }
+
+  static void patched() {
+    patchedManifests.incrementAndGet();
+  }
+
+  static void generatedNatively() {
+    nativeManifests.incrementAndGet();
+  }
+}
@@ -8,6 +8,11 @@
 
 package org.sonatype.m2e.mavenarchiver.internal;
 
+import org.apache.maven.artifact.versioning.ArtifactVersion;
+import org.apache.maven.artifact.versioning.DefaultArtifactVersion;
+import org.apache.maven.plugin.MojoExecution;
+import org.apache.maven.project.MavenProject;
+import org.codehaus.plexus.util.xml.Xpp3Dom;
 import org.eclipse.core.runtime.IPath;
 import org.eclipse.m2e.core.project.IMavenProjectFacade;
 import org.eclipse.m2e.core.project.configurator.MojoExecutionKey;
@@ -21,6 +26,12 @@ import org.eclipse.m2e.core.project.configurator.MojoExecutionKey;
  */
 public class JarArchiverConfigurator extends AbstractMavenArchiverConfigurator {
 
+  private static final String USE_DEFAULT_MANIFEST_FILE = "useDefaultManifestFile";
+
+  private static final ArtifactVersion MIN_NATIVE_VERSION = new DefaultArtifactVersion("2.4");
+
+  private static final ArtifactVersion MAX_NATIVE_VERSION = new DefaultArtifactVersion("2.5");
+
   @Override
   protected IPath getOutputDir(IMavenProjectFacade facade) {
     IPath outputLocation = facade.getOutputLocation();
@@ -32,6 +43,37 @@ public class JarArchiverConfigurator extends AbstractMavenArchiverConfigurator {
     return "jarArchiver";
   }
 
+  /**
+   * maven-jar-plugin 2.4 is the only 2.x version using maven-archiver 2.5.
+   */
+  @Override
+  protected boolean isNativeManifestSupported(MavenProject mavenProject, MojoExecution mojoExecution) {
+    if(mojoExecution.getVersion() == null) {
+      return false;
+    }
+    ArtifactVersion version = new DefaultArtifactVersion(mojoExecution.getVersion());
+    if(version.compareTo(MIN_NATIVE_VERSION) < 0 || version.compareTo(MAX_NATIVE_VERSION) >= 0) {
+      return false;
+    }
+    //The default manifest file is read by the mojo. The execution configuration is the one which actually runs,
+    //i.e. the plugin configuration merged with the execution one and the parameter defaults
+    Xpp3Dom configuration = mojoExecution.getConfiguration();
+    Xpp3Dom useDefaultManifestFile = configuration == null ? null : configuration.getChild(USE_DEFAULT_MANIFEST_FILE);
+    if(useDefaultManifestFile == null) {
+      return true;
+    }
+    String value = useDefaultManifestFile.getValue();
+    if(value != null && value.trim().startsWith("${") && value.trim().endsWith("}")) {
+      //Only simple property expressions, e.g. the ${jar.useDefaultManifestFile} default one
+      String property = value.trim().substring(2, value.trim().length() - 1);
+      value = mavenProject.getProperties().getProperty(property, System.getProperty(property));
+    }
+    if(value == null) {
+      value = useDefaultManifestFile.getAttribute("default-value");
+    }
+    return value == null || "false".equals(value.trim());
+  }
+
   @Override
   protected MojoExecutionKey getExecutionKey() {
     MojoExecutionKey key = new MojoExecutionKey("org.apache.maven.plugins", "maven-jar-plugin", "", "jar", null, null);
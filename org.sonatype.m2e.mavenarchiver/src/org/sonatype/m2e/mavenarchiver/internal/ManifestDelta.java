@@ -0,0 +1,97 @@
+/*******************************************************************************
+ * Copyright (c) 2008 Sonatype, Inc.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************/
+
+package org.sonatype.m2e.mavenarchiver.internal;
+
+import java.io.File;
+
+import org.eclipse.core.resources.IProject;
+import org.eclipse.core.resources.IResourceDelta;
+import org.eclipse.core.runtime.IPath;
+import org.eclipse.core.runtime.Path;
+import org.eclipse.m2e.core.internal.IMavenConstants;
+
+/**
+ * Classifies the resource delta of a project build into the triggers of the mavenarchiver build participant : the
+ * generated manifest, the user provided manifest and the pom, and the other generated files.<br/>
+ * Only the delta nodes along the paths of these files are visited, so the size of the delta (e.g. thousands of
+ * compiled classes) doesn't matter, and manifests elsewhere in the project (test resources, nested bundles) are
+ * ignored.
+ */
+class ManifestDelta {
+
+  private static final IPath META_INF_PATH = Path.fromPortableString("META-INF");
+
+  private static final IPath MANIFEST_PATH = META_INF_PATH.append("MANIFEST.MF");
+
+  private static final IPath POM_PATH = Path.fromPortableString(IMavenConstants.POM_FILE_NAME);
+
+  /**
+   * The generated manifest, or the user provided manifest, changed.
+   */
+  final boolean manifestChanged;
+
+  /**
+   * The pom changed.
+   */
+  final boolean pomChanged;
+
+  /**
+   * The output META-INF folder, where all the files are generated, changed or can't be tracked.
+   */
+  final boolean outputChanged;
+
+  private ManifestDelta(boolean manifestChanged, boolean pomChanged, boolean outputChanged) {
+    this.manifestChanged = manifestChanged;
+    this.pomChanged = pomChanged;
+    this.outputChanged = outputChanged;
+  }
+
+  /**
+   * @return true if the delta touches none of the inputs and outputs of the build participant.
+   */
+  boolean isEmpty() {
+    return !manifestChanged && !pomChanged && !outputChanged;
+  }
+
+  /**
+   * @param delta the project delta, or null for a full build
+   * @param outputDir the workspace path of the project output folder
+   * @param providedManifest the user provided manifest, may be null
+   * @return the triggers found in the delta, all of them for a full build
+   */
+  static ManifestDelta classify(IResourceDelta delta, IProject project, IPath outputDir, File providedManifest) {
+    if(delta == null) {
+      return new ManifestDelta(true, true, true);
+    }
+    IPath outputPath = getProjectPath(project.getFullPath(), outputDir);
+    //An output folder outside of the project never shows in the delta
+    boolean outputChanged = outputPath == null || hasDelta(delta, outputPath.append(META_INF_PATH));
+    boolean manifestChanged = outputChanged && outputPath != null
+        && hasDelta(delta, outputPath.append(MANIFEST_PATH));
+    if(!manifestChanged && providedManifest != null && project.getLocation() != null) {
+      IPath providedPath = Path.fromOSString(providedManifest.getAbsolutePath());
+      manifestChanged = hasDelta(delta, getProjectPath(project.getLocation(), providedPath));
+    }
+    return new ManifestDelta(manifestChanged, hasDelta(delta, POM_PATH), outputChanged);
+  }
+
+  private static boolean hasDelta(IResourceDelta delta, IPath projectPath) {
+    return projectPath != null && delta.findMember(projectPath) != null;
+  }
+
+  /**
+   * @return the path relative to the project, or null if it's outside of the project.
+   */
+  private static IPath getProjectPath(IPath projectPath, IPath path) {
+    if(!projectPath.isPrefixOf(path)) {
+      return null;
+    }
+    return path.makeRelativeTo(projectPath);
+  }
+}
@@ -0,0 +1,160 @@
+/*******************************************************************************
+ * Copyright (c) 2008 Sonatype, Inc.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************/
+
+package org.sonatype.m2e.mavenarchiver.internal;
+
+import java.io.File;
+import java.io.UnsupportedEncodingException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+import org.apache.maven.model.Organization;
+import org.apache.maven.model.Plugin;
+import org.apache.maven.project.MavenProject;
+import org.codehaus.plexus.util.xml.Xpp3Dom;
+import org.eclipse.core.resources.IProject;
+import org.eclipse.core.runtime.CoreException;
+import org.eclipse.core.runtime.QualifiedName;
+
+/**
+ * Compact fingerprint of all the inputs of a generated manifest : the archiver plugin version, the effective archive
+ * configuration, the state of the user provided manifest, whether reproducible output is enabled and, when they can
+ * reach the manifest, the project coordinates, name, organization and url and the listed dependencies.<br/>
+ * The fingerprint of the last generated manifest is persisted with the project, so stale manifests can be detected
+ * without an old project state to compare to, even after a restart.
+ */
+class ManifestFingerprint {
+
+  /**
+   * Bump whenever the fingerprint content changes, to invalidate the persisted fingerprints.
+   */
+  private static final String VERSION = "6";
+
+  private static final String MANIFEST_FILE_NODE = "manifestFile";
+
+  private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+  private final MessageDigest digest;
+
+  private ManifestFingerprint() {
+    try {
+      digest = MessageDigest.getInstance("SHA-1");
+    } catch(NoSuchAlgorithmException ex) {
+      //SHA-1 is required on every Java platform
+      throw new IllegalStateException(ex);
+    }
+  }
+
+  /**
+   * Computes the fingerprint of the manifest inputs of a project.
+   * @param mavenProject the maven project
+   * @param plugin the archiver plugin, may be null
+   * @param archiveConfiguration the effective archive configuration, may be null
+   * @return the hexadecimal fingerprint
+   */
+  static String compute(MavenProject mavenProject, Plugin plugin, Xpp3Dom archiveConfiguration) {
+    return compute(mavenProject, plugin, archiveConfiguration, true);
+  }
+
+  /**
+   * Computes the fingerprint of the manifest inputs of a project, but its dependencies. Two project states with the
+   * same such fingerprint only differ by the entries computed from the dependencies.
+   */
+  static String computeWithoutDependencies(MavenProject mavenProject, Plugin plugin, Xpp3Dom archiveConfiguration) {
+    return compute(mavenProject, plugin, archiveConfiguration, false);
+  }
+
+  private static String compute(MavenProject mavenProject, Plugin plugin, Xpp3Dom archiveConfiguration,
+      boolean withDependencies) {
+    ManifestFingerprint fingerprint = new ManifestFingerprint();
+    fingerprint.add(VERSION);
+    if(plugin != null) {
+      fingerprint.add(plugin.getKey()).add(plugin.getVersion());
+    }
+
+    fingerprint.add(archiveConfiguration == null ? null : Long.toHexString(Xpp3DomHash.hash(archiveConfiguration)));
+    fingerprint.addProvidedManifest(mavenProject, archiveConfiguration);
+    //Selects the environment dependent entries, see ReproducibleOutput
+    fingerprint.add(Boolean.toString(ReproducibleOutput.isEnabled(mavenProject)));
+
+    //Only the inputs which can reach the manifest, see ManifestRelevance
+    if(ManifestRelevance.isProjectInfoRelevant(archiveConfiguration)) {
+      fingerprint.add(mavenProject.getGroupId()).add(mavenProject.getVersion());
+      fingerprint.add(mavenProject.getName()).add(mavenProject.getUrl());
+      Organization organization = mavenProject.getOrganization();
+      if(organization != null) {
+        fingerprint.add(organization.getName());
+      }
+    }
+    if(withDependencies && ManifestRelevance.isClasspathRelevant(archiveConfiguration)) {
+      boolean extensions = ManifestRelevance.isExtensionsRelevant(archiveConfiguration);
+      fingerprint.add(Long.toHexString(ArtifactsHash.classpathHash(mavenProject.getArtifacts(), extensions)));
+    }
+    return fingerprint.toHex();
+  }
+
+  /**
+   * @return the fingerprint of the last manifest generated for the project, or null if unknown.
+   */
+  static String getStored(IProject project, String pluginKey) {
+    try {
+      return project.isAccessible() ? project.getPersistentProperty(getPropertyName(pluginKey)) : null;
+    } catch(CoreException ex) {
+      return null;
+    }
+  }
+
+  static void store(IProject project, String pluginKey, String fingerprint) throws CoreException {
+    if(project.isAccessible()) {
+      project.setPersistentProperty(getPropertyName(pluginKey), fingerprint);
+    }
+  }
+
+  private static QualifiedName getPropertyName(String pluginKey) {
+    return new QualifiedName(MavenArchiverConstants.PLUGIN_ID, "manifestFingerprint." + pluginKey);
+  }
+
+  private void addProvidedManifest(MavenProject mavenProject, Xpp3Dom archiveConfiguration) {
+    Xpp3Dom manifestFileNode = archiveConfiguration == null ? null : archiveConfiguration.getChild(MANIFEST_FILE_NODE);
+    String path = manifestFileNode == null ? null : manifestFileNode.getValue();
+    if(path == null || path.trim().length() == 0) {
+      return;
+    }
+    File manifestFile = new File(path.trim());
+    if(!manifestFile.isAbsolute()) {
+      manifestFile = new File(mavenProject.getBasedir(), path.trim());
+    }
+    add(Long.toString(manifestFile.length())).add(Long.toString(manifestFile.lastModified()));
+  }
+
+  private ManifestFingerprint add(String value) {
+    if(value == null) {
+      digest.update((byte) 1);
+    } else {
+      try {
+        digest.update(value.getBytes("UTF-8"));
+      } catch(UnsupportedEncodingException ex) {
+        //UTF-8 is required on every Java platform
+        throw new IllegalStateException(ex);
+      }
+    }
+    //separator, so that ("ab", "c") and ("a", "bc") differ
+    digest.update((byte) 0);
+    return this;
+  }
+
+  private String toHex() {
+    byte[] bytes = digest.digest();
+    char[] chars = new char[bytes.length * 2];
+    for(int i = 0; i < bytes.length; i++ ) {
+      chars[2 * i] = HEX[(bytes[i] >> 4) & 0xf];
+      chars[2 * i + 1] = HEX[bytes[i] & 0xf];
+    }
+    return new String(chars);
+  }
+}
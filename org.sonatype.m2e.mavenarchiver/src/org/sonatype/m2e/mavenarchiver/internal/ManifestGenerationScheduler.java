@@ -0,0 +1,194 @@
+/*******************************************************************************
+ * Copyright (c) 2008 Sonatype, Inc.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************/
+
+package org.sonatype.m2e.mavenarchiver.internal;
+
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.eclipse.core.resources.IProject;
+import org.eclipse.core.resources.IWorkspace;
+import org.eclipse.core.resources.IWorkspaceRunnable;
+import org.eclipse.core.resources.ResourcesPlugin;
+import org.eclipse.core.resources.WorkspaceJob;
+import org.eclipse.core.runtime.CoreException;
+import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.core.runtime.IStatus;
+import org.eclipse.core.runtime.MultiStatus;
+import org.eclipse.core.runtime.OperationCanceledException;
+import org.eclipse.core.runtime.Status;
+import org.eclipse.core.runtime.SubMonitor;
+import org.eclipse.core.runtime.jobs.Job;
+import org.eclipse.m2e.core.MavenPlugin;
+import org.eclipse.m2e.core.project.IMavenProjectFacade;
+
+/**
+ * Generates the manifests of changed projects in the background.<br/>
+ * Projects are queued, at most once per configurator, and processed by a worker job, so large workspace updates
+ * don't block the project update job. Each generation holds its project as scheduling rule, so it runs after the
+ * workspace operation which triggered it.<br/>
+ * Workers are workspace jobs of the {@link MavenArchiverConstants#MANIFEST_GENERATION_FAMILY} family, so they can be
+ * joined like the build jobs.<br/>
+ * Canceling a worker drops all the pending generations. Stale manifests are then detected on the next build.
+ */
+class ManifestGenerationScheduler {
+
+  /**
+   * Generations configure mojos and resolve parent projects through IMaven, which isn't documented as thread safe, so
+   * a single worker runs at a time.
+   */
+  private static final int MAX_WORKERS = 1;
+
+  private final Map<List<Object>, Request> queue = new LinkedHashMap<List<Object>, Request>();
+
+  private int workers;
+
+  /**
+   * Queues the manifest generation of the project. A generation already pending for the same project and
+   * configurator is not queued again.
+   * @param force whether the manifest must be generated even if its inputs didn't change, e.g. when a workspace
+   *          artifact it references changed
+   */
+  synchronized void schedule(AbstractMavenArchiverConfigurator configurator, IProject project, boolean force) {
+    List<Object> key = Arrays.<Object> asList(project, configurator.getClass());
+    Request pending = queue.get(key);
+    if(pending != null) {
+      pending.force |= force;
+      return;
+    }
+    queue.put(key, new Request(configurator, project, force));
+    if(workers < MAX_WORKERS && workers < queue.size()) {
+      workers++ ;
+      new Worker().schedule();
+    }
+  }
+
+  /**
+   * Drops the pending generations of the project, e.g. when it's removed.
+   */
+  synchronized void remove(IProject project) {
+    for(Iterator<Request> it = queue.values().iterator(); it.hasNext();) {
+      if(it.next().project.equals(project)) {
+        it.remove();
+      }
+    }
+  }
+
+  /**
+   * @return the next pending generation, or null if the worker has to stop, in which case its slot is released.
+   */
+  synchronized Request next(boolean canceled) {
+    if(canceled) {
+      queue.clear();
+    }
+    Iterator<Request> it = queue.values().iterator();
+    if(!it.hasNext()) {
+      workers-- ;
+      return null;
+    }
+    Request request = it.next();
+    it.remove();
+    return request;
+  }
+
+  /**
+   * Releases the slot of a worker which stopped before the queue was empty, e.g. on an Error, and starts another
+   * one for the pending generations.
+   */
+  synchronized void workerFailed() {
+    workers-- ;
+    if(!queue.isEmpty()) {
+      workers++ ;
+      new Worker().schedule();
+    }
+  }
+
+  private static class Request {
+    final AbstractMavenArchiverConfigurator configurator;
+
+    final IProject project;
+
+    boolean force;
+
+    Request(AbstractMavenArchiverConfigurator configurator, IProject project, boolean force) {
+      this.configurator = configurator;
+      this.project = project;
+      this.force = force;
+    }
+
+    void run(IProgressMonitor monitor) throws CoreException {
+      if(!project.isAccessible()) {
+        return;
+      }
+      //The project may have changed again since it was queued
+      final IMavenProjectFacade facade = MavenPlugin.getMavenProjectRegistry().getProject(project);
+      if(facade == null) {
+        return;
+      }
+      //Dequeued, so no longer updated
+      final boolean forceGeneration = force;
+      IWorkspaceRunnable generation = new IWorkspaceRunnable() {
+        public void run(IProgressMonitor monitor) throws CoreException {
+          //Unless forced, compares to the inputs of the last generation, so already up to date manifests are skipped
+          configurator.mavenProjectChanged(facade, null, forceGeneration, monitor);
+        }
+      };
+      ResourcesPlugin.getWorkspace().run(generation, project, IWorkspace.AVOID_UPDATE, monitor);
+    }
+  }
+
+  private class Worker extends WorkspaceJob {
+
+    Worker() {
+      super("Generating MANIFEST.MF files");
+      setPriority(Job.BUILD);
+    }
+
+    public boolean belongsTo(Object family) {
+      return family == MavenArchiverConstants.MANIFEST_GENERATION_FAMILY;
+    }
+
+    public IStatus runInWorkspace(IProgressMonitor monitor) {
+      MultiStatus status = new MultiStatus(MavenArchiverConstants.PLUGIN_ID, 0, "Unable to generate some manifests",
+          null);
+      SubMonitor progress = SubMonitor.convert(monitor, getName(), IProgressMonitor.UNKNOWN);
+      boolean released = false;
+      try {
+        Request request;
+        while((request = next(progress.isCanceled())) != null) {
+          progress.subTask(request.project.getName());
+          //The queue length is unknown, each generation takes a share of the remaining work
+          progress.setWorkRemaining(100);
+          try {
+            request.run(progress.newChild(1));
+          } catch(CoreException ex) {
+            status.add(ex.getStatus());
+          } catch(OperationCanceledException ex) {
+            //the next request will stop the worker
+          } catch(RuntimeException ex) {
+            status.add(new Status(IStatus.ERROR, MavenArchiverConstants.PLUGIN_ID, "Unable to generate the manifest of "
+                + request.project.getName(), ex));
+          }
+        }
+        released = true;
+      } finally {
+        if(!released) {
+          workerFailed();
+        }
+        monitor.done();
+      }
+      if(monitor.isCanceled()) {
+        return Status.CANCEL_STATUS;
+      }
+      return status.isOK() ? Status.OK_STATUS : status;
+    }
+  }
+}
@@ -0,0 +1,80 @@
+/*******************************************************************************
+ * Copyright (c) 2008 Sonatype, Inc.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************/
+
+package org.sonatype.m2e.mavenarchiver.internal;
+
+import org.apache.maven.artifact.Artifact;
+import org.apache.maven.artifact.handler.ArtifactHandler;
+import org.codehaus.plexus.util.xml.Xpp3Dom;
+
+/**
+ * Tells which project inputs can reach the manifest generated by maven-archiver for a given archive configuration :
+ * <ul>
+ * <li>dependencies only affect the Class-Path and Extension-List entries, so only matter when addClasspath or
+ * addExtensions is set. The Class-Path only lists the ones on the runtime classpath (compile and runtime scopes),
+ * the Extension-List all the ones which aren't test scoped</li>
+ * <li>the project version, groupId, name, organization and url only appear in the default specification and
+ * implementation entries</li>
+ * </ul>
+ * Anything interpolated in the archive configuration itself is covered by the configuration comparison.
+ */
+class ManifestRelevance {
+
+  private static final String MANIFEST_NODE = "manifest";
+
+  private ManifestRelevance() {
+    // prevent instantiation.
+  }
+
+  /**
+   * @return true if the dependencies of the project can change the manifest.
+   */
+  static boolean isClasspathRelevant(Xpp3Dom archiveConfiguration) {
+    return isEnabled(archiveConfiguration, "addClasspath") || isEnabled(archiveConfiguration, "addExtensions");
+  }
+
+  /**
+   * @return true if the project version, groupId, name, organization and url can change the manifest.
+   */
+  static boolean isProjectInfoRelevant(Xpp3Dom archiveConfiguration) {
+    return isEnabled(archiveConfiguration, "addDefaultImplementationEntries")
+        || isEnabled(archiveConfiguration, "addDefaultSpecificationEntries");
+  }
+
+  /**
+   * @return true if the Extension-List entry, which lists more dependencies than the Class-Path, can be generated.
+   */
+  static boolean isExtensionsRelevant(Xpp3Dom archiveConfiguration) {
+    return isEnabled(archiveConfiguration, "addExtensions");
+  }
+
+  /**
+   * @param extensions whether the Extension-List entry is generated, see {@link #isExtensionsRelevant(Xpp3Dom)}
+   * @return true if the artifact can appear in the manifest : in the Class-Path entry if it's on the runtime
+   *         classpath, like in MavenProject.getRuntimeClasspathElements(), or in the Extension-List entry if it isn't
+   *         test scoped.
+   */
+  static boolean isClasspathEligible(Artifact artifact, boolean extensions) {
+    String scope = artifact.getScope();
+    if(extensions && !Artifact.SCOPE_TEST.equals(scope)) {
+      return true;
+    }
+    if(!Artifact.SCOPE_COMPILE.equals(scope) && !Artifact.SCOPE_RUNTIME.equals(scope)) {
+      return false;
+    }
+    ArtifactHandler handler = artifact.getArtifactHandler();
+    return handler != null && handler.isAddedToClasspath();
+  }
+
+  private static boolean isEnabled(Xpp3Dom archiveConfiguration, String flag) {
+    Xpp3Dom manifestNode = archiveConfiguration == null ? null : archiveConfiguration.getChild(MANIFEST_NODE);
+    Xpp3Dom flagNode = manifestNode == null ? null : manifestNode.getChild(flag);
+    String value = flagNode == null ? null : flagNode.getValue();
+    return value != null && Boolean.valueOf(value.trim()).booleanValue();
+  }
+}
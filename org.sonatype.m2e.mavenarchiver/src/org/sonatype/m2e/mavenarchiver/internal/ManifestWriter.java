@@ -0,0 +1,227 @@
+/*******************************************************************************
+ * Copyright (c) 2008 Sonatype, Inc.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************/
+
+package org.sonatype.m2e.mavenarchiver.internal;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.jar.Attributes;
+import java.util.jar.Manifest;
+
+/**
+ * Serializes a manifest merged with an overriding manifest in a single pass, without building the merged manifest :
+ * no section is cloned and no entry is copied, the UTF-8 bytes are directly written in a buffer sized from the
+ * content.<br/>
+ * The output is the one of {@link Manifest#write(java.io.OutputStream)} on the merged manifest : main section first,
+ * starting with the version, then the named sections, every line wrapped at 72 bytes and terminated by CRLF. The
+ * overriding entries take precedence, entries and sections missing from the manifest are written after its own ones.
+ */
+public final class ManifestWriter {
+
+  private static final int MAX_LINE_LENGTH = 72;
+
+  private static final String NAME = "Name";
+
+  /**
+   * Never altered.
+   */
+  private static final Attributes NO_ATTRIBUTES = new Attributes(0);
+
+  private byte[] buf;
+
+  private int count;
+
+  /**
+   * Number of bytes of the current line.
+   */
+  private int column;
+
+  private ManifestWriter(int capacity) {
+    buf = new byte[capacity];
+  }
+
+  /**
+   * @param manifest the manifest
+   * @param overrides the manifest whose entries override the ones of the manifest, may be null
+   * @return the serialized merged manifest
+   */
+  public static byte[] write(Manifest manifest, Manifest overrides) {
+    Attributes main = manifest.getMainAttributes();
+    Attributes overridingMain = overrides == null ? NO_ATTRIBUTES : overrides.getMainAttributes();
+    Map<String, Attributes> sections = manifest.getEntries();
+    Map<String, Attributes> overridingSections = overrides == null ? Collections.<String, Attributes> emptyMap()
+        : overrides.getEntries();
+
+    int size = estimateSize(manifest) + (overrides == null ? 0 : estimateSize(overrides));
+    ManifestWriter writer = new ManifestWriter(size);
+
+    //Like Manifest.write, the main section is only written along with a version
+    Attributes.Name versionName = Attributes.Name.MANIFEST_VERSION;
+    Object version = getValue(versionName, main, overridingMain);
+    if(version == null) {
+      versionName = Attributes.Name.SIGNATURE_VERSION;
+      version = getValue(versionName, main, overridingMain);
+    }
+    if(version != null) {
+      writer.writeEntry(versionName.toString(), version.toString());
+      writer.writeAttributes(main, overridingMain, versionName);
+    }
+    writer.newLine();
+
+    for(Map.Entry<String, Attributes> section : sections.entrySet()) {
+      Attributes overridingSection = overridingSections.get(section.getKey());
+      writer.writeSection(section.getKey(), section.getValue(), overridingSection);
+    }
+    for(Map.Entry<String, Attributes> section : overridingSections.entrySet()) {
+      if(section.getValue() != null && !sections.containsKey(section.getKey())) {
+        writer.writeSection(section.getKey(), section.getValue(), null);
+      }
+    }
+    return writer.toByteArray();
+  }
+
+  private static Object getValue(Attributes.Name name, Attributes attributes, Attributes overridingAttributes) {
+    Object value = overridingAttributes.get(name);
+    return value != null ? value : attributes.get(name);
+  }
+
+  private void writeSection(String name, Attributes attributes, Attributes overridingAttributes) {
+    writeEntry(NAME, name);
+    writeAttributes(attributes == null ? NO_ATTRIBUTES : attributes,
+        overridingAttributes == null ? NO_ATTRIBUTES : overridingAttributes, null);
+    newLine();
+  }
+
+  /**
+   * Writes the merged attributes, but the excluded one.
+   */
+  private void writeAttributes(Attributes attributes, Attributes overridingAttributes, Attributes.Name excluded) {
+    for(Map.Entry<Object, Object> entry : attributes.entrySet()) {
+      Object name = entry.getKey();
+      if(!name.equals(excluded)) {
+        Object value = overridingAttributes.get(name);
+        writeEntry(name.toString(), String.valueOf(value != null ? value : entry.getValue()));
+      }
+    }
+    for(Map.Entry<Object, Object> entry : overridingAttributes.entrySet()) {
+      Object name = entry.getKey();
+      if(!name.equals(excluded) && !attributes.containsKey(name)) {
+        writeEntry(name.toString(), String.valueOf(entry.getValue()));
+      }
+    }
+  }
+
+  private void writeEntry(String name, String value) {
+    write(name);
+    write(": ");
+    write(value);
+    newLine();
+  }
+
+  /**
+   * Writes the UTF-8 encoding of the string, wrapping the line every 72 bytes.
+   */
+  private void write(String s) {
+    int length = s.length();
+    //At most 3 bytes per char, plus a line break every 71 bytes, so put doesn't have to check the capacity
+    ensureCapacity(length * 3 + (length * 3 / (MAX_LINE_LENGTH - 1) + 1) * 3);
+    for(int i = 0; i < length; i++ ) {
+      char c = s.charAt(i);
+      if(c < 0x80) {
+        if(c == '\r' || c == '\n') {
+          //A line ending in a value is normalized to CRLF, see ReproducibleOutput.normalizeLineEndings
+          if(c == '\r' && i + 1 < length && s.charAt(i + 1) == '\n') {
+            i++ ;
+          }
+          newLine();
+        } else {
+          put((byte) c);
+        }
+      } else if(c < 0x800) {
+        put((byte) (0xc0 | (c >> 6)));
+        put((byte) (0x80 | (c & 0x3f)));
+      } else if(Character.isHighSurrogate(c) && i + 1 < length && Character.isLowSurrogate(s.charAt(i + 1))) {
+        int codePoint = Character.toCodePoint(c, s.charAt(++i));
+        put((byte) (0xf0 | (codePoint >> 18)));
+        put((byte) (0x80 | ((codePoint >> 12) & 0x3f)));
+        put((byte) (0x80 | ((codePoint >> 6) & 0x3f)));
+        put((byte) (0x80 | (codePoint & 0x3f)));
+      } else if(Character.isHighSurrogate(c) || Character.isLowSurrogate(c)) {
+        //Malformed, like String.getBytes
+        put((byte) '?');
+      } else {
+        put((byte) (0xe0 | (c >> 12)));
+        put((byte) (0x80 | ((c >> 6) & 0x3f)));
+        put((byte) (0x80 | (c & 0x3f)));
+      }
+    }
+  }
+
+  private void put(byte b) {
+    if(column == MAX_LINE_LENGTH) {
+      //Continuation lines start with a space
+      buf[count++ ] = '\r';
+      buf[count++ ] = '\n';
+      buf[count++ ] = ' ';
+      column = 1;
+    }
+    buf[count++ ] = b;
+    column++ ;
+  }
+
+  private void newLine() {
+    ensureCapacity(2);
+    buf[count++ ] = '\r';
+    buf[count++ ] = '\n';
+    column = 0;
+  }
+
+  private void ensureCapacity(int length) {
+    if(count + length > buf.length) {
+      byte[] newBuf = new byte[Math.max(buf.length * 2, count + length)];
+      System.arraycopy(buf, 0, newBuf, 0, count);
+      buf = newBuf;
+    }
+  }
+
+  private byte[] toByteArray() {
+    if(count == buf.length) {
+      return buf;
+    }
+    byte[] content = new byte[count];
+    System.arraycopy(buf, 0, content, 0, count);
+    return content;
+  }
+
+  /**
+   * @return the approximate size of the serialized manifest, assuming mostly ASCII content.
+   */
+  private static int estimateSize(Manifest manifest) {
+    int size = estimateSize(manifest.getMainAttributes()) + 2;
+    for(Map.Entry<String, Attributes> section : manifest.getEntries().entrySet()) {
+      size += estimateSize(NAME, section.getKey()) + estimateSize(section.getValue()) + 2;
+    }
+    return size;
+  }
+
+  private static int estimateSize(Attributes attributes) {
+    int size = 0;
+    if(attributes != null) {
+      for(Map.Entry<Object, Object> entry : attributes.entrySet()) {
+        size += estimateSize(entry.getKey().toString(), String.valueOf(entry.getValue()));
+      }
+    }
+    return size;
+  }
+
+  private static int estimateSize(String name, String value) {
+    int length = name.length() + 2 + value.length();
+    //CRLF, plus CRLF and a space for every wrapped line
+    return length + 2 + length / (MAX_LINE_LENGTH - 1) * 3;
+  }
+}
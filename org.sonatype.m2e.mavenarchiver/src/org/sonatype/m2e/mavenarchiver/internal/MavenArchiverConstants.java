@@ -9,10 +9,22 @@ import org.eclipse.m2e.core.internal.IMavenConstants;
  */
 public class MavenArchiverConstants {
 
+	public static final String PLUGIN_ID = "org.sonatype.m2e.mavenarchiver"; //$NON-NLS-1$
+
 	public static final String MAVENARCHIVER_MARKER_ID = IMavenConstants.MARKER_ID + ".mavenarchiver"; //$NON-NLS-1$
 
 	public static final String MAVENARCHIVER_MARKER_ERROR = MAVENARCHIVER_MARKER_ID + ".error"; //$NON-NLS-1$
 
+	/**
+	 * System property disabling the generation of manifests without the archiver mojo, when set to "false".
+	 */
+	public static final String NATIVE_MANIFEST_PROPERTY = PLUGIN_ID + ".nativeManifest"; //$NON-NLS-1$
+
+	/**
+	 * Family of the jobs generating the manifests of changed projects in the background.
+	 */
+	public static final Object MANIFEST_GENERATION_FAMILY = PLUGIN_ID + ".manifestGeneration"; //$NON-NLS-1$
+
 	private MavenArchiverConstants() {
 		// prevent instantiation.
 	}
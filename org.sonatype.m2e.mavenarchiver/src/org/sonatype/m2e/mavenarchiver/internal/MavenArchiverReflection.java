@@ -0,0 +1,215 @@
+/*******************************************************************************
+ * Copyright (c) 2008 Sonatype, Inc.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************/
+
+package org.sonatype.m2e.mavenarchiver.internal;
+
+import java.io.File;
+import java.io.PrintWriter;
+import java.io.Reader;
+import java.lang.ref.WeakReference;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Field;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.WeakHashMap;
+
+import org.apache.maven.project.MavenProject;
+import org.codehaus.plexus.util.ReflectionUtils;
+
+/**
+ * Reflective access to the MavenArchiver API of a mojo, resolved once per plugin realm.<br/>
+ * Instances are cached weakly by the mojo ClassLoader, one per mojo class and field names, so several archiver mojos
+ * of the same realm don't evict each other. As an instance strongly reaches its mojo class, and so the ClassLoader
+ * key, instances are only weakly referenced, so disposed plugin realms can still be garbage collected.
+ */
+class MavenArchiverReflection {
+
+  private static final String MAVEN_ARCHIVER_CLASS = "org.apache.maven.archiver.MavenArchiver";
+
+  private static final Map<ClassLoader, Map<String, WeakReference<MavenArchiverReflection>>> cache = new WeakHashMap<ClassLoader, Map<String, WeakReference<MavenArchiverReflection>>>();
+
+  private final Field archiverField;
+
+  private final Field archiveConfigurationField;
+
+  private final Class<?> mavenArchiverClass;
+
+  private final Method setArchiver;
+
+  private final Method setOutputFile;
+
+  // lazily resolved, as they depend on the runtime type of the archive configuration and manifest instances
+  private Class<?> archiveConfigurationClass;
+
+  private Method getManifest;
+
+  private Method getManifestFile;
+
+  private Class<?> manifestClass;
+
+  private Method write;
+
+  private Constructor<?> manifestConstructor;
+
+  private MavenArchiverReflection(Class<?> mojoClass, String archiverFieldName, String archiveConfigurationFieldName)
+      throws ClassNotFoundException, NoSuchMethodException, NoSuchFieldException {
+    archiverField = findField(archiverFieldName, mojoClass);
+    archiveConfigurationField = findField(archiveConfigurationFieldName, mojoClass);
+
+    mavenArchiverClass = Class.forName(MAVEN_ARCHIVER_CLASS, false, mojoClass.getClassLoader());
+    Method setter = null;
+    for(Method m : mavenArchiverClass.getMethods()) {
+      if("setArchiver".equals(m.getName()) && m.getParameterTypes().length == 1) {
+        setter = m;
+        break;
+      }
+    }
+    if(setter == null) {
+      throw new NoSuchMethodException(MAVEN_ARCHIVER_CLASS + ".setArchiver");
+    }
+    setArchiver = setter;
+    setOutputFile = mavenArchiverClass.getMethod("setOutputFile", File.class);
+  }
+
+  /**
+   * Gets the reflective MavenArchiver API for the given mojo class, resolving it if it isn't cached yet.
+   */
+  static MavenArchiverReflection get(Class<?> mojoClass, String archiverFieldName,
+      String archiveConfigurationFieldName) throws ClassNotFoundException, NoSuchMethodException,
+      NoSuchFieldException {
+    ClassLoader loader = mojoClass.getClassLoader();
+    //Class names are unique within a ClassLoader, and keys don't reference the realm
+    String key = mojoClass.getName() + "#" + archiverFieldName + "#" + archiveConfigurationFieldName;
+    synchronized(cache) {
+      Map<String, WeakReference<MavenArchiverReflection>> loaderEntries = cache.get(loader);
+      if(loaderEntries == null) {
+        loaderEntries = new HashMap<String, WeakReference<MavenArchiverReflection>>();
+        cache.put(loader, loaderEntries);
+      }
+      WeakReference<MavenArchiverReflection> ref = loaderEntries.get(key);
+      MavenArchiverReflection reflection = ref == null ? null : ref.get();
+      if(reflection == null) {
+        reflection = new MavenArchiverReflection(mojoClass, archiverFieldName, archiveConfigurationFieldName);
+        loaderEntries.put(key, new WeakReference<MavenArchiverReflection>(reflection));
+      }
+      return reflection;
+    }
+  }
+
+  Object getArchiver(Object mojo) throws IllegalAccessException {
+    return archiverField.get(mojo);
+  }
+
+  Object getArchiveConfiguration(Object mojo) throws IllegalAccessException {
+    return archiveConfigurationField.get(mojo);
+  }
+
+  Object newMavenArchiver(Object archiver, File manifestFile) throws InstantiationException, IllegalAccessException,
+      InvocationTargetException {
+    Object mavenArchiver = mavenArchiverClass.newInstance();
+    setArchiver.invoke(mavenArchiver, archiver);
+    setOutputFile.invoke(mavenArchiver, manifestFile);
+    return mavenArchiver;
+  }
+
+  Object getManifest(Object mavenArchiver, MavenProject mavenProject, Object archiveConfiguration)
+      throws NoSuchMethodException, IllegalAccessException, InvocationTargetException {
+    return getManifestMethod(archiveConfiguration.getClass()).invoke(mavenArchiver, mavenProject,
+        archiveConfiguration);
+  }
+
+  /**
+   * @return the user provided manifest file, or null if the archiver version doesn't support it.
+   */
+  File getManifestFile(Object archiveConfiguration) throws IllegalAccessException, InvocationTargetException {
+    Method method = getManifestFileMethod(archiveConfiguration.getClass());
+    return method == null ? null : (File) method.invoke(archiveConfiguration);
+  }
+
+  /**
+   * @return a new manifest instance read from the given reader, or null if the manifest class doesn't support it.
+   */
+  Object newManifest(Class<?> manifestClass, Reader reader) throws InstantiationException, IllegalAccessException,
+      InvocationTargetException {
+    Constructor<?> constructor = getManifestConstructor(manifestClass);
+    return constructor == null ? null : constructor.newInstance(reader);
+  }
+
+  void write(Object manifest, PrintWriter writer) throws NoSuchMethodException, IllegalAccessException,
+      InvocationTargetException {
+    getWriteMethod(manifest.getClass()).invoke(manifest, writer);
+  }
+
+  private synchronized Method getManifestMethod(Class<?> configurationClass) throws NoSuchMethodException {
+    resolveArchiveConfiguration(configurationClass);
+    if(getManifest == null) {
+      throw new NoSuchMethodException(MAVEN_ARCHIVER_CLASS + ".getManifest");
+    }
+    return getManifest;
+  }
+
+  private synchronized Method getManifestFileMethod(Class<?> configurationClass) {
+    resolveArchiveConfiguration(configurationClass);
+    return getManifestFile;
+  }
+
+  private void resolveArchiveConfiguration(Class<?> configurationClass) {
+    if(archiveConfigurationClass == configurationClass) {
+      return;
+    }
+    archiveConfigurationClass = configurationClass;
+    getManifest = getMethod(mavenArchiverClass, "getManifest", MavenProject.class, configurationClass);
+    getManifestFile = getMethod(configurationClass, "getManifestFile");
+  }
+
+  private synchronized Method getWriteMethod(Class<?> manifestClass) throws NoSuchMethodException {
+    resolveManifest(manifestClass);
+    if(write == null) {
+      throw new NoSuchMethodException(manifestClass.getName() + ".write");
+    }
+    return write;
+  }
+
+  private synchronized Constructor<?> getManifestConstructor(Class<?> manifestClass) {
+    resolveManifest(manifestClass);
+    return manifestConstructor;
+  }
+
+  private void resolveManifest(Class<?> manifestClass) {
+    if(this.manifestClass == manifestClass) {
+      return;
+    }
+    this.manifestClass = manifestClass;
+    write = getMethod(manifestClass, "write", PrintWriter.class);
+    try {
+      manifestConstructor = manifestClass.getConstructor(Reader.class);
+    } catch(NoSuchMethodException ex) {
+      //not supported by this archiver version
+      manifestConstructor = null;
+    }
+  }
+
+  private static Method getMethod(Class<?> clazz, String name, Class<?>... parameterTypes) {
+    try {
+      return clazz.getMethod(name, parameterTypes);
+    } catch(NoSuchMethodException ex) {
+      return null;
+    }
+  }
+
+  private static Field findField(String name, Class<?> clazz) throws NoSuchFieldException {
+    Field field = ReflectionUtils.getFieldByNameIncludingSuperclasses(name, clazz);
+    if(field == null) {
+      throw new NoSuchFieldException(clazz.getName() + "." + name);
+    }
+    field.setAccessible(true);
+    return field;
+  }
+}
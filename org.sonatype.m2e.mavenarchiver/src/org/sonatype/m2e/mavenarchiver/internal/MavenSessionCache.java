@@ -0,0 +1,118 @@
+/*******************************************************************************
+ * Copyright (c) 2008 Sonatype, Inc.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************/
+
+package org.sonatype.m2e.mavenarchiver.internal;
+
+import java.io.File;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.apache.maven.execution.MavenSession;
+import org.apache.maven.project.MavenProject;
+import org.eclipse.core.resources.IProject;
+import org.eclipse.m2e.core.project.ResolverConfiguration;
+
+/**
+ * Per project cache of the {@link MavenSession} used to generate the manifest, so back to back generations of the
+ * same project state (e.g. from the build participant, then from a project change event) share a single execution
+ * request and session.<br/>
+ * A cached session is only reused for the very same {@link MavenProject} instance, i.e. within a single project
+ * configuration cycle, and as long as the resolver configuration, the offline mode, the settings files and the local
+ * repository don't change. Sessions hold their project snapshot, so the session of a previous project state is
+ * removed as soon as the project changes.
+ */
+class MavenSessionCache {
+
+  private final Map<IProject, Entry> entries = new HashMap<IProject, Entry>();
+
+  /**
+   * @return the cached session, or null if there's none or if it was created for another project state.
+   */
+  synchronized MavenSession get(IProject project, MavenProject mavenProject,
+      ResolverConfiguration resolverConfiguration, boolean offline, String settings) {
+    Entry entry = entries.get(project);
+    if(entry == null) {
+      return null;
+    }
+    if(entry.mavenProject != mavenProject || entry.offline != offline
+        || !entry.signature.equals(getSignature(resolverConfiguration, settings))) {
+      entries.remove(project);
+      return null;
+    }
+    return entry.session;
+  }
+
+  synchronized void put(IProject project, MavenProject mavenProject, ResolverConfiguration resolverConfiguration,
+      boolean offline, String settings, MavenSession session) {
+    entries.put(project, new Entry(mavenProject, getSignature(resolverConfiguration, settings), offline, session));
+  }
+
+  synchronized void remove(IProject project) {
+    entries.remove(project);
+  }
+
+  /**
+   * Removes the cached session if it was created for another state of the project.
+   * @return true if a session was removed
+   */
+  synchronized boolean removeStale(IProject project, MavenProject mavenProject) {
+    Entry entry = entries.get(project);
+    if(entry == null || entry.mavenProject == mavenProject) {
+      return false;
+    }
+    entries.remove(project);
+    return true;
+  }
+
+  /**
+   * @return the signature of the settings a session is created from : the user and global settings files, with their
+   *         timestamp, and the local repository path.
+   */
+  static String getSettingsSignature(String userSettingsFile, String globalSettingsFile, String localRepositoryPath) {
+    StringBuilder sb = new StringBuilder();
+    appendFile(sb, userSettingsFile);
+    appendFile(sb, globalSettingsFile);
+    sb.append('|').append(localRepositoryPath);
+    return sb.toString();
+  }
+
+  private static void appendFile(StringBuilder sb, String path) {
+    sb.append('|').append(path);
+    if(path != null) {
+      sb.append('@').append(new File(path).lastModified());
+    }
+  }
+
+  private static String getSignature(ResolverConfiguration configuration, String settings) {
+    StringBuilder sb = new StringBuilder(settings);
+    if(configuration == null) {
+      return sb.toString();
+    }
+    sb.append('|').append(configuration.shouldResolveWorkspaceProjects());
+    sb.append('|').append(configuration.getActiveProfiles());
+    sb.append('|').append(configuration.getSelectedProfiles());
+    return sb.toString();
+  }
+
+  private static class Entry {
+    final MavenProject mavenProject;
+
+    final String signature;
+
+    final boolean offline;
+
+    final MavenSession session;
+
+    Entry(MavenProject mavenProject, String signature, boolean offline, MavenSession session) {
+      this.mavenProject = mavenProject;
+      this.signature = signature;
+      this.offline = offline;
+      this.session = session;
+    }
+  }
+}
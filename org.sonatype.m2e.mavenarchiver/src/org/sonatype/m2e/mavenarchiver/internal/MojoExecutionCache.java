@@ -0,0 +1,101 @@
+/*******************************************************************************
+ * Copyright (c) 2008 Sonatype, Inc.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************/
+
+package org.sonatype.m2e.mavenarchiver.internal;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import org.apache.maven.model.Dependency;
+import org.apache.maven.model.Exclusion;
+import org.apache.maven.model.Plugin;
+import org.apache.maven.model.PluginExecution;
+import org.apache.maven.plugin.MojoExecution;
+import org.eclipse.core.resources.IProject;
+
+/**
+ * Per project cache of the archiver {@link MojoExecution}, so the "package" execution plan doesn't need to be
+ * recalculated every time a manifest is generated.<br/>
+ * A cached execution is discarded as soon as the project packaging or the effective configuration or dependencies of
+ * the archiver plugin change. Its plugin realm may be flushed by m2e on any project change, so executions are also
+ * removed whenever the project changes.
+ */
+class MojoExecutionCache {
+
+  private final Map<IProject, Map<String, Entry>> entries = new HashMap<IProject, Map<String, Entry>>();
+
+  /**
+   * @return the cached execution of the given plugin, or null if there's none or if the plugin configuration changed
+   *         since it was cached.
+   */
+  synchronized MojoExecution get(IProject project, String pluginKey, String packaging, Plugin plugin) {
+    Map<String, Entry> projectEntries = entries.get(project);
+    Entry entry = projectEntries == null ? null : projectEntries.get(pluginKey);
+    if(entry == null) {
+      return null;
+    }
+    if(!entry.signature.equals(getSignature(packaging, plugin))) {
+      projectEntries.remove(pluginKey);
+      return null;
+    }
+    return entry.execution;
+  }
+
+  synchronized void put(IProject project, String pluginKey, String packaging, Plugin plugin,
+      MojoExecution execution) {
+    Map<String, Entry> projectEntries = entries.get(project);
+    if(projectEntries == null) {
+      projectEntries = new HashMap<String, Entry>();
+      entries.put(project, projectEntries);
+    }
+    projectEntries.put(pluginKey, new Entry(getSignature(packaging, plugin), execution));
+  }
+
+  synchronized void remove(IProject project) {
+    entries.remove(project);
+  }
+
+  /**
+   * Computes a signature of the packaging, which selects the lifecycle mapping, and of the effective plugin
+   * configuration and dependencies, i.e. everything from the project model that contributes to the resolved mojo
+   * execution.
+   */
+  private static String getSignature(String packaging, Plugin plugin) {
+    StringBuilder sb = new StringBuilder();
+    sb.append(packaging);
+    if(plugin == null) {
+      return sb.toString();
+    }
+    sb.append('|').append(plugin.getKey()).append(':').append(plugin.getVersion());
+    for(Dependency dependency : plugin.getDependencies()) {
+      sb.append('|').append(dependency.getGroupId()).append(':').append(dependency.getArtifactId());
+      sb.append(':').append(dependency.getVersion()).append(':').append(dependency.getType());
+      sb.append(':').append(dependency.getClassifier());
+      for(Exclusion exclusion : dependency.getExclusions()) {
+        sb.append(":-").append(exclusion.getGroupId()).append(':').append(exclusion.getArtifactId());
+      }
+    }
+    sb.append('|').append(plugin.getConfiguration());
+    for(PluginExecution execution : plugin.getExecutions()) {
+      sb.append('|').append(execution.getId()).append(':').append(execution.getPhase());
+      sb.append(':').append(execution.getGoals()).append(':').append(execution.getConfiguration());
+    }
+    return sb.toString();
+  }
+
+  private static class Entry {
+    final String signature;
+
+    final MojoExecution execution;
+
+    Entry(String signature, MojoExecution execution) {
+      this.signature = signature;
+      this.execution = execution;
+    }
+  }
+}
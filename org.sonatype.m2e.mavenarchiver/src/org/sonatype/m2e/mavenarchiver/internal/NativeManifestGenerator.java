@@ -0,0 +1,311 @@
+/*******************************************************************************
+ * Copyright (c) 2008 Sonatype, Inc.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************/
+
+package org.sonatype.m2e.mavenarchiver.internal;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.jar.Attributes;
+import java.util.jar.Manifest;
+
+import org.apache.maven.artifact.Artifact;
+import org.apache.maven.model.Organization;
+import org.apache.maven.project.MavenProject;
+import org.codehaus.plexus.util.xml.Xpp3Dom;
+
+/**
+ * Builds the manifest the way maven-archiver 2.5 (maven-jar-plugin 2.4) does, directly from the project and the
+ * archive configuration, without configuring the archiver mojo.<br/>
+ * Only the common configurations are supported : default and project info entries, Class-Path with the simple
+ * layout, Main-Class, Package, manifestEntries and manifestSections. {@link #generate(MavenProject, Xpp3Dom)} returns
+ * null for anything else, so the manifest can be generated by the mojo instead.
+ */
+class NativeManifestGenerator {
+
+  private static final String MANIFEST_VERSION = "1.0";
+
+  private static final String CLASS_PATH = "Class-Path";
+
+  private static final String LAYOUT_SIMPLE = "simple";
+
+  /**
+   * The archive configuration elements which don't affect the manifest.
+   */
+  private static final Set<String> IGNORED_ARCHIVE_NODES = new HashSet<String>(Arrays.asList("addMavenDescriptor",
+      "compress", "forced", "index", "manifestFile", "pomPropertiesFile"));
+
+  /**
+   * The manifest configuration elements supported by this generator.
+   */
+  private static final Set<String> SUPPORTED_MANIFEST_NODES = new HashSet<String>(Arrays.asList("addClasspath",
+      "addDefaultImplementationEntries", "addDefaultSpecificationEntries", "classpathLayoutType", "classpathPrefix",
+      "mainClass", "packageName", "useUniqueVersions"));
+
+  private NativeManifestGenerator() {
+    // prevent instantiation.
+  }
+
+  /**
+   * Generates the manifest of the project.
+   * @param mavenProject the project, with its workspace artifacts fixed
+   * @param archive the customized archive configuration, may be null
+   * @return the manifest, or null if the configuration isn't supported
+   */
+  static Manifest generate(MavenProject mavenProject, Xpp3Dom archive) {
+    Xpp3Dom manifestConfig = null;
+    Map<String, String> entries = new LinkedHashMap<String, String>();
+    Map<String, Map<String, String>> sections = new LinkedHashMap<String, Map<String, String>>();
+    if(archive != null) {
+      for(Xpp3Dom child : archive.getChildren()) {
+        String name = child.getName();
+        if("manifest".equals(name)) {
+          manifestConfig = child;
+        } else if("manifestEntries".equals(name)) {
+          if(!readEntries(child, entries)) {
+            return null;
+          }
+        } else if("manifestSections".equals(name)) {
+          if(!readSections(child, sections)) {
+            return null;
+          }
+        } else if(!IGNORED_ARCHIVE_NODES.contains(name)) {
+          return null;
+        } else if("manifestFile".equals(name) && !isLiteral(child.getValue())) {
+          //The provided manifest is read by the caller, which can't evaluate the expression
+          return null;
+        }
+      }
+    }
+    if(manifestConfig != null) {
+      for(Xpp3Dom child : manifestConfig.getChildren()) {
+        if(!SUPPORTED_MANIFEST_NODES.contains(child.getName()) || !isLiteral(child.getValue())) {
+          return null;
+        }
+      }
+      String layout = getValue(manifestConfig, "classpathLayoutType");
+      if(layout != null && !LAYOUT_SIMPLE.equals(layout)) {
+        return null;
+      }
+    }
+
+    try {
+      return createManifest(mavenProject, manifestConfig, entries, sections);
+    } catch(IllegalArgumentException ex) {
+      //Invalid manifest header name, let the archiver report it
+      return null;
+    }
+  }
+
+  private static Manifest createManifest(MavenProject mavenProject, Xpp3Dom manifestConfig,
+      Map<String, String> entries, Map<String, Map<String, String>> sections) {
+    Manifest manifest = new Manifest();
+    Attributes main = manifest.getMainAttributes();
+    main.put(Attributes.Name.MANIFEST_VERSION, MANIFEST_VERSION);
+
+    //Default entries, unless explicitly configured, in the order of MavenArchiver.getManifest
+    Map<String, String> defaults = new LinkedHashMap<String, String>();
+    //The archiver appends the maven version, but m2e always configures its own Created-By
+    defaults.put("Created-By", "Apache Maven");
+    defaults.put("Built-By", System.getProperty("user.name"));
+    defaults.put("Build-Jdk", System.getProperty("java.version"));
+    String packageName = getValue(manifestConfig, "packageName");
+    if(packageName != null) {
+      defaults.put("Package", packageName);
+    }
+
+    String classPath = null;
+    if(isTrue(manifestConfig, "addClasspath")) {
+      classPath = buildClassPath(mavenProject.getArtifacts(), getValue(manifestConfig, "classpathPrefix"));
+      if(classPath == null) {
+        return null;
+      }
+    }
+
+    if(isTrue(manifestConfig, "addDefaultSpecificationEntries")) {
+      defaults.put("Specification-Title", mavenProject.getName());
+      defaults.put("Specification-Version", mavenProject.getVersion());
+      Organization organization = mavenProject.getOrganization();
+      if(organization != null) {
+        defaults.put("Specification-Vendor", organization.getName());
+      }
+    }
+    if(isTrue(manifestConfig, "addDefaultImplementationEntries")) {
+      defaults.put("Implementation-Title", mavenProject.getName());
+      defaults.put("Implementation-Version", mavenProject.getVersion());
+      defaults.put("Implementation-Vendor-Id", mavenProject.getGroupId());
+      Organization organization = mavenProject.getOrganization();
+      if(organization != null) {
+        defaults.put("Implementation-Vendor", organization.getName());
+      }
+    }
+    String mainClass = getValue(manifestConfig, "mainClass");
+    if(mainClass != null && mainClass.length() > 0) {
+      defaults.put("Main-Class", mainClass);
+    }
+
+    //maven-archiver only skips the defaults explicitly configured with the exact same name,
+    //the archiver would then fail on case variants
+    if(isCaseVariant(entries.keySet(), defaults.keySet())) {
+      return null;
+    }
+    for(Map.Entry<String, String> entry : defaults.entrySet()) {
+      if(!entries.containsKey(entry.getKey())) {
+        main.putValue(entry.getKey(), entry.getValue() == null ? "" : entry.getValue());
+      }
+    }
+    if(classPath != null && classPath.length() > 0) {
+      main.putValue(CLASS_PATH, classPath);
+    }
+
+    for(Map.Entry<String, String> entry : entries.entrySet()) {
+      String value = entry.getValue();
+      if(CLASS_PATH.equals(entry.getKey()) && main.getValue(CLASS_PATH) != null) {
+        //The configured Class-Path comes first
+        value = value + " " + main.getValue(CLASS_PATH);
+      }
+      main.putValue(entry.getKey(), value);
+    }
+
+    for(Map.Entry<String, Map<String, String>> section : sections.entrySet()) {
+      Attributes attributes = new Attributes();
+      for(Map.Entry<String, String> entry : section.getValue().entrySet()) {
+        attributes.putValue(entry.getKey(), entry.getValue());
+      }
+      manifest.getEntries().put(section.getKey(), attributes);
+    }
+    return manifest;
+  }
+
+  /**
+   * Builds the Class-Path entry the same way every maven-archiver 2.x version does for the simple layout, so a
+   * manifest only needs its Class-Path to be patched when nothing but the dependencies changed.
+   * @param artifacts the project artifacts, with their workspace artifacts fixed
+   * @param archive the archive configuration, may be null
+   * @return the Class-Path value, empty if there are no dependencies, or null if there's no Class-Path, if it
+   *         depends on another layout, or on something else than the Class-Path (i.e. Extension-List)
+   */
+  static String getClassPath(Collection<Artifact> artifacts, Xpp3Dom archive) {
+    Xpp3Dom manifestConfig = archive == null ? null : archive.getChild("manifest");
+    if(!isTrue(manifestConfig, "addClasspath") || isTrue(manifestConfig, "addExtensions")
+        || isTrue(manifestConfig, "classpathMavenRepositoryLayout")
+        || manifestConfig.getChild("customClasspathLayout") != null) {
+      return null;
+    }
+    String layout = getValue(manifestConfig, "classpathLayoutType");
+    String prefix = getValue(manifestConfig, "classpathPrefix");
+    if(layout != null && !LAYOUT_SIMPLE.equals(layout) || !isLiteral(prefix)) {
+      return null;
+    }
+    return buildClassPath(artifacts, prefix);
+  }
+
+  /**
+   * Builds the Class-Path entry from the runtime classpath of the project, as a simple layout.
+   * @return the Class-Path value, empty if there are no dependencies, or null if it can't be built natively.
+   */
+  private static String buildClassPath(Collection<Artifact> artifacts, String classpathPrefix) {
+    String prefix = classpathPrefix == null ? "" : classpathPrefix.trim().replace('\\', '/');
+    if(prefix.length() > 0 && !prefix.endsWith("/")) {
+      prefix += "/";
+    }
+    StringBuilder classPath = new StringBuilder();
+    for(Artifact artifact : artifacts) {
+      //Only called without the Extension-List
+      if(!ManifestRelevance.isClasspathEligible(artifact, false)) {
+        continue;
+      }
+      File file = artifact.getFile();
+      if(file == null) {
+        //The archiver mojo fails on unresolved dependencies
+        return null;
+      }
+      if(!file.isFile()) {
+        continue;
+      }
+      if(artifact.isSnapshot() && !artifact.getVersion().equals(artifact.getBaseVersion())) {
+        //Timestamped snapshots depend on the useUniqueVersions configuration
+        return null;
+      }
+      if(classPath.length() > 0) {
+        classPath.append(' ');
+      }
+      classPath.append(prefix).append(artifact.getArtifactId()).append('-').append(artifact.getVersion());
+      if(artifact.hasClassifier()) {
+        classPath.append('-').append(artifact.getClassifier());
+      }
+      classPath.append('.').append(artifact.getArtifactHandler().getExtension());
+    }
+    return classPath.toString();
+  }
+
+  private static boolean readEntries(Xpp3Dom node, Map<String, String> entries) {
+    for(Xpp3Dom entry : node.getChildren()) {
+      String value = entry.getValue();
+      if(entry.getChildCount() > 0 || value == null || value.length() == 0 || !isLiteral(value)) {
+        return false;
+      }
+      entries.put(entry.getName(), value);
+    }
+    return true;
+  }
+
+  private static boolean readSections(Xpp3Dom node, Map<String, Map<String, String>> sections) {
+    for(Xpp3Dom section : node.getChildren()) {
+      String name = getValue(section, "name");
+      if(name == null || !isLiteral(name) || sections.containsKey(name)) {
+        return false;
+      }
+      Map<String, String> entries = new LinkedHashMap<String, String>();
+      for(Xpp3Dom child : section.getChildren()) {
+        if("manifestEntries".equals(child.getName())) {
+          if(!readEntries(child, entries)) {
+            return false;
+          }
+        } else if(!"name".equals(child.getName())) {
+          return false;
+        }
+      }
+      sections.put(name, entries);
+    }
+    return true;
+  }
+
+  private static boolean isCaseVariant(Set<String> names, Set<String> others) {
+    for(String name : names) {
+      for(String other : others) {
+        if(!name.equals(other) && name.toLowerCase(Locale.ENGLISH).equals(other.toLowerCase(Locale.ENGLISH))) {
+          return true;
+        }
+      }
+    }
+    return false;
+  }
+
+  /**
+   * @return false for values still holding expressions, which only the mojo configuration can evaluate.
+   */
+  private static boolean isLiteral(String value) {
+    return value == null || value.indexOf("${") < 0;
+  }
+
+  private static String getValue(Xpp3Dom node, String childName) {
+    Xpp3Dom child = node == null ? null : node.getChild(childName);
+    String value = child == null ? null : child.getValue();
+    return value == null ? null : value.trim();
+  }
+
+  private static boolean isTrue(Xpp3Dom node, String childName) {
+    return Boolean.valueOf(getValue(node, childName)).booleanValue();
+  }
+}
@@ -0,0 +1,119 @@
+/*******************************************************************************
+ * Copyright (c) 2008 Sonatype, Inc.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************/
+
+package org.sonatype.m2e.mavenarchiver.internal;
+
+import java.io.File;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.maven.model.Parent;
+import org.apache.maven.project.MavenProject;
+
+/**
+ * Bounded LRU cache of resolved parent projects, shared by all the projects having the same parents.<br/>
+ * Entries are keyed by the parent coordinates and the profiles of the resolution, and only reused as long as the pom
+ * files of the parent and of all its ancestors keep the same size and timestamp they had when it was resolved, as the
+ * effective model of a parent inherits from its own parents. The files are checked on each lookup, as the changes of
+ * pom packaged parents aren't notified to the archiver configurators.<br/>
+ * The cached projects are shared, so they must never be modified : callers link a clone to their own hierarchy.
+ */
+class ParentProjectCache {
+
+  private static final int MAX_SIZE = 128;
+
+  private final Map<String, CachedParent> entries = new LinkedHashMap<String, CachedParent>(16, 0.75f, true) {
+    private static final long serialVersionUID = 1L;
+
+    protected boolean removeEldestEntry(Map.Entry<String, CachedParent> eldest) {
+      return size() > MAX_SIZE;
+    }
+  };
+
+  /**
+   * @param profiles the signature of the profiles the parent is resolved with
+   * @return the cached parent project, not to be modified, or null if it's not cached or if its pom file or the one
+   *         of an ancestor changed.
+   */
+  synchronized MavenProject get(Parent parent, String profiles) {
+    String key = getKey(parent.getGroupId(), parent.getArtifactId(), parent.getVersion()) + profiles;
+    CachedParent entry = entries.get(key);
+    if(entry == null) {
+      return null;
+    }
+    if(!entry.isUpToDate()) {
+      entries.remove(key);
+      return null;
+    }
+    return entry.project;
+  }
+
+  /**
+   * @param poms the pom files of the parent, then of its ancestors
+   */
+  synchronized void put(Parent parent, String profiles, MavenProject parentProject, List<File> poms) {
+    String key = getKey(parent.getGroupId(), parent.getArtifactId(), parent.getVersion()) + profiles;
+    entries.put(key, new CachedParent(parentProject, poms));
+  }
+
+  /**
+   * Evicts the parent project having the given coordinates, whatever the profiles, e.g. when the corresponding
+   * workspace project changed.
+   */
+  synchronized void remove(String groupId, String artifactId, String version) {
+    String prefix = getKey(groupId, artifactId, version);
+    for(Iterator<String> it = entries.keySet().iterator(); it.hasNext();) {
+      if(it.next().startsWith(prefix)) {
+        it.remove();
+      }
+    }
+  }
+
+  /**
+   * @return the signature of the active and inactive profiles a parent is resolved with.
+   */
+  static String getProfilesSignature(List<String> activeProfiles, List<String> inactiveProfiles) {
+    return String.valueOf(activeProfiles) + '|' + String.valueOf(inactiveProfiles);
+  }
+
+  private static String getKey(String groupId, String artifactId, String version) {
+    return groupId + ':' + artifactId + ':' + version + '|';
+  }
+
+  private static class CachedParent {
+    final MavenProject project;
+
+    final File[] poms;
+
+    final long[] lastModified;
+
+    final long[] length;
+
+    CachedParent(MavenProject project, List<File> poms) {
+      this.project = project;
+      this.poms = poms.toArray(new File[poms.size()]);
+      this.lastModified = new long[this.poms.length];
+      this.length = new long[this.poms.length];
+      for(int i = 0; i < this.poms.length; i++ ) {
+        lastModified[i] = this.poms[i].lastModified();
+        length[i] = this.poms[i].length();
+      }
+    }
+
+    boolean isUpToDate() {
+      for(int i = 0; i < poms.length; i++ ) {
+        if(poms[i].lastModified() != lastModified[i] || poms[i].length() != length[i]) {
+          return false;
+        }
+      }
+      return true;
+    }
+  }
+}
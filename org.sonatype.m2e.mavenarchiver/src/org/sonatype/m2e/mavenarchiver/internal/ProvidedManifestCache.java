@@ -0,0 +1,127 @@
+/*******************************************************************************
+ * Copyright (c) 2008 Sonatype, Inc.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************/
+
+package org.sonatype.m2e.mavenarchiver.internal;
+
+import java.io.ByteArrayInputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.lang.reflect.InvocationTargetException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.jar.Manifest;
+
+import org.codehaus.plexus.util.IOUtil;
+
+/**
+ * Bounded LRU cache of the parsed user provided manifests (archive/manifestFile).<br/>
+ * Entries are keyed by the manifest file, and only reused as long as the file keeps the same size and timestamp it
+ * had when it was read. Manifests are read as UTF-8, whatever the platform encoding. Only the content and its
+ * java.util.jar.Manifest are cached, they are never modified : merging a provided manifest only alters the generated
+ * one.
+ */
+class ProvidedManifestCache {
+
+  private static final int MAX_SIZE = 64;
+
+  private static final String UTF_8 = "UTF-8";
+
+  private final Map<File, CachedManifest> entries = new LinkedHashMap<File, CachedManifest>(16, 0.75f, true) {
+    private static final long serialVersionUID = 1L;
+
+    protected boolean removeEldestEntry(Map.Entry<File, CachedManifest> eldest) {
+      return size() > MAX_SIZE;
+    }
+  };
+
+  /**
+   * @return the provided manifest. It must not be altered.
+   */
+  Manifest getManifest(File file) throws IOException {
+    CachedManifest entry = getEntry(file);
+    synchronized(entry) {
+      if(entry.manifest == null) {
+        entry.manifest = new Manifest(new ByteArrayInputStream(entry.content));
+      }
+      return entry.manifest;
+    }
+  }
+
+  /**
+   * @return a new instance of the archiver manifest class, read from the cached content of the provided manifest, or
+   *         null if the class can't be read from a reader. Plugin realm instances are never cached, so discarded
+   *         realms can be collected.
+   */
+  Object getManifest(File file, MavenArchiverReflection reflection, Class<?> manifestClass) throws IOException,
+      InstantiationException, IllegalAccessException, InvocationTargetException {
+    CachedManifest entry = getEntry(file);
+    Reader reader = new InputStreamReader(new ByteArrayInputStream(entry.content), UTF_8);
+    try {
+      return reflection.newManifest(manifestClass, reader);
+    } finally {
+      IOUtil.close(reader);
+    }
+  }
+
+  private CachedManifest getEntry(File file) throws IOException {
+    synchronized(entries) {
+      CachedManifest entry = entries.get(file);
+      if(entry != null && entry.isUpToDate(file)) {
+        return entry;
+      }
+    }
+    CachedManifest entry = new CachedManifest(file);
+    synchronized(entries) {
+      entries.put(file, entry);
+    }
+    return entry;
+  }
+
+  private static class CachedManifest {
+    final long lastModified;
+
+    final long length;
+
+    final byte[] content;
+
+    Manifest manifest;
+
+    CachedManifest(File file) throws IOException {
+      //Stamps first, so a concurrent modification is read again next time
+      this.lastModified = file.lastModified();
+      this.length = file.length();
+      this.content = read(file);
+    }
+
+    boolean isUpToDate(File file) {
+      return file.lastModified() == lastModified && file.length() == length;
+    }
+
+    private static byte[] read(File file) throws IOException {
+      FileInputStream is = new FileInputStream(file);
+      try {
+        FileChannel channel = is.getChannel();
+        ByteBuffer buffer = ByteBuffer.allocate((int) channel.size());
+        while(buffer.hasRemaining()) {
+          if(channel.read(buffer) < 0) {
+            throw new EOFException(file.getAbsolutePath());
+          }
+        }
+        return buffer.array();
+      } finally {
+        IOUtil.close(is);
+      }
+    }
+  }
+}
@@ -0,0 +1,131 @@
+/*******************************************************************************
+ * Copyright (c) 2008 Sonatype, Inc.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************/
+
+package org.sonatype.m2e.mavenarchiver.internal;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Properties;
+import java.util.jar.Attributes;
+import java.util.jar.Manifest;
+
+import org.apache.maven.project.MavenProject;
+
+/**
+ * Helpers producing byte-identical generated files for identical inputs, the same way the CLI maven-archiver does.
+ * <ul>
+ * <li>pom.properties are always written with sorted keys, no timestamp comment and '\n' line endings</li>
+ * <li>manifests are always written with CRLF line endings</li>
+ * <li>when <code>project.build.outputTimestamp</code> is set, the environment dependent default manifest entries
+ * (Built-By, Build-Jdk) are replaced by Build-Jdk-Spec, unless they were explicitly configured</li>
+ * </ul>
+ */
+class ReproducibleOutput {
+
+  static final String OUTPUT_TIMESTAMP_PROPERTY = "project.build.outputTimestamp";
+
+  private static final String PROPERTIES_ENCODING = "ISO-8859-1";
+
+  private static final Attributes.Name BUILT_BY = new Attributes.Name("Built-By");
+
+  private static final Attributes.Name BUILD_JDK = new Attributes.Name("Build-Jdk");
+
+  private static final Attributes.Name BUILD_JDK_SPEC = new Attributes.Name("Build-Jdk-Spec");
+
+  private ReproducibleOutput() {
+    // prevent instantiation.
+  }
+
+  /**
+   * Checks whether the project asks for reproducible builds. As in maven-archiver, a single character value (like
+   * "-") disables it.
+   */
+  static boolean isEnabled(MavenProject mavenProject) {
+    String outputTimestamp = mavenProject.getProperties().getProperty(OUTPUT_TIMESTAMP_PROPERTY);
+    return outputTimestamp != null && outputTimestamp.trim().length() > 1;
+  }
+
+  /**
+   * Serializes the properties with sorted keys, the given comment (without any date) and '\n' line endings.
+   */
+  static byte[] storeProperties(Properties properties, String comment) throws IOException {
+    ByteArrayOutputStream buf = new ByteArrayOutputStream();
+    properties.store(buf, null);
+
+    //Properties.store() escapes line breaks, so each remaining line is a single entry
+    List<String> entries = new ArrayList<String>(properties.size());
+    for(String line : buf.toString(PROPERTIES_ENCODING).split("\r\n|\r|\n")) {
+      if(line.length() > 0 && !line.startsWith("#")) {
+        entries.add(line);
+      }
+    }
+    Collections.sort(entries);
+
+    StringBuilder sb = new StringBuilder();
+    if(comment != null) {
+      sb.append('#').append(comment).append('\n');
+    }
+    for(String entry : entries) {
+      sb.append(entry).append('\n');
+    }
+    return sb.toString().getBytes(PROPERTIES_ENCODING);
+  }
+
+  /**
+   * Converts every line ending of the serialized manifest to CRLF, as expected by the manifest specification.
+   */
+  static byte[] normalizeLineEndings(byte[] content) {
+    ByteArrayOutputStream buf = new ByteArrayOutputStream(content.length + 16);
+    for(int i = 0; i < content.length; i++ ) {
+      byte b = content[i];
+      if(b == '\r') {
+        if(i + 1 < content.length && content[i + 1] == '\n') {
+          i++ ;
+        }
+        buf.write('\r');
+        buf.write('\n');
+      } else if(b == '\n') {
+        buf.write('\r');
+        buf.write('\n');
+      } else {
+        buf.write(b);
+      }
+    }
+    return buf.toByteArray();
+  }
+
+  /**
+   * Removes the default Built-By and Build-Jdk entries, which depend on the machine running the build, and adds
+   * Build-Jdk-Spec instead, like maven-archiver 3.5+ does.
+   * @param configuredEntries the main attributes explicitly configured by the user, which are kept as is
+   */
+  static void removeEnvironmentEntries(Manifest manifest, Collection<String> configuredEntries) {
+    Attributes mainAttributes = manifest.getMainAttributes();
+    if(!isConfigured(BUILT_BY, configuredEntries)) {
+      mainAttributes.remove(BUILT_BY);
+    }
+    if(!isConfigured(BUILD_JDK, configuredEntries) && mainAttributes.remove(BUILD_JDK) != null
+        && !mainAttributes.containsKey(BUILD_JDK_SPEC)) {
+      mainAttributes.put(BUILD_JDK_SPEC, System.getProperty("java.specification.version"));
+    }
+  }
+
+  private static boolean isConfigured(Attributes.Name name, Collection<String> configuredEntries) {
+    //manifest header names are case insensitive
+    for(String entry : configuredEntries) {
+      if(name.toString().equalsIgnoreCase(entry)) {
+        return true;
+      }
+    }
+    return false;
+  }
+}
@@ -0,0 +1,107 @@
+/*******************************************************************************
+ * Copyright (c) 2008 Sonatype, Inc.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************/
+
+package org.sonatype.m2e.mavenarchiver.internal;
+
+import java.lang.ref.WeakReference;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * 64 bits FNV-1a hashing primitives, and a memo of hashes computed for immutable object trees, keyed by instance.
+ * Hashing strings this way doesn't allocate anything.
+ */
+class StructuralHash {
+
+  static final long SEED = 0xcbf29ce484222325L;
+
+  private static final long FNV_PRIME = 0x100000001b3L;
+
+  private StructuralHash() {
+    // prevent instantiation.
+  }
+
+  static long update(long hash, String value) {
+    if(value == null) {
+      return update(hash, -1);
+    }
+    int length = value.length();
+    for(int i = 0; i < length; i++ ) {
+      hash = (hash ^ value.charAt(i)) * FNV_PRIME;
+    }
+    return update(hash, length);
+  }
+
+  static long update(long hash, int value) {
+    for(int i = 0; i < 4; i++ ) {
+      hash = (hash ^ (value & 0xff)) * FNV_PRIME;
+      value >>>= 8;
+    }
+    return hash;
+  }
+
+  static long update(long hash, boolean value) {
+    return update(hash, value ? 1 : 0);
+  }
+
+  /**
+   * Bounded memo of hashes, keyed by instance identity. Keys are weakly referenced, so memoized instances can still
+   * be garbage collected.
+   */
+  static class Memo {
+
+    private final Map<Key, Long> hashes;
+
+    Memo(final int maxSize) {
+      hashes = new LinkedHashMap<Key, Long>(maxSize, 0.75f, true) {
+        private static final long serialVersionUID = 1L;
+
+        protected boolean removeEldestEntry(Map.Entry<Key, Long> eldest) {
+          return size() > maxSize;
+        }
+      };
+    }
+
+    /**
+     * @return the memoized hash of the instance, or null if unknown.
+     */
+    synchronized Long get(Object instance) {
+      return hashes.get(new Key(instance));
+    }
+
+    synchronized void put(Object instance, long hash) {
+      hashes.put(new Key(instance), Long.valueOf(hash));
+    }
+  }
+
+  private static class Key {
+    private final WeakReference<Object> instance;
+
+    private final int hashCode;
+
+    Key(Object instance) {
+      this.instance = new WeakReference<Object>(instance);
+      this.hashCode = System.identityHashCode(instance);
+    }
+
+    public int hashCode() {
+      return hashCode;
+    }
+
+    public boolean equals(Object obj) {
+      if(this == obj) {
+        return true;
+      }
+      if(!(obj instanceof Key)) {
+        return false;
+      }
+      Object referent = instance.get();
+      return referent != null && referent == ((Key) obj).instance.get();
+    }
+  }
+}
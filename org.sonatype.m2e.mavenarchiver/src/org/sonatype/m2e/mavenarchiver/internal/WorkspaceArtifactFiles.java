@@ -0,0 +1,131 @@
+/*******************************************************************************
+ * Copyright (c) 2008 Sonatype, Inc.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************/
+
+package org.sonatype.m2e.mavenarchiver.internal;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.apache.maven.artifact.Artifact;
+import org.apache.maven.artifact.DefaultArtifact;
+import org.apache.maven.artifact.repository.ArtifactRepository;
+import org.eclipse.core.resources.IProject;
+
+/**
+ * Workspace project artifacts don't have a valid getFile() (it's their output folder or pom.xml), so they would be
+ * ignored during the resolution of the Class-Path manifest entry.<br/>
+ * This class substitutes them with artifacts pointing to an empty file named after the repository layout. As
+ * maven-archiver checks the runtime classpath elements by path, these files must actually exist : they are only
+ * created when missing, and deleted, along with the folders created for them, when the VM exits. The substituted
+ * artifact set is cached per project until its dependencies change.
+ */
+class WorkspaceArtifactFiles {
+
+  private static final File FAKE_REPO = new File(System.getProperty("java.io.tmpdir"), "fakerepo");
+
+  private static final Map<IProject, Entry> cache = new HashMap<IProject, Entry>();
+
+  private WorkspaceArtifactFiles() {
+    // prevent instantiation.
+  }
+
+  /**
+   * @return the artifacts of the project, where workspace project artifacts have an empty jar file.
+   */
+  static Set<Artifact> fix(IProject project, Set<Artifact> artifacts, ArtifactRepository localRepo) {
+    if(artifacts == null) {
+      return null;
+    }
+    Entry entry;
+    synchronized(cache) {
+      entry = cache.get(project);
+    }
+    if(entry != null && entry.artifacts.get() == artifacts) {
+      //The files may have been deleted since, e.g. by a tmp cleanup
+      for(File fakeFile : entry.fakeFiles) {
+        ensureExists(fakeFile);
+      }
+      return entry.fixedArtifacts;
+    }
+
+    Set<Artifact> newArtifacts = new LinkedHashSet<Artifact>(artifacts.size());
+    List<File> fakeFiles = new ArrayList<File>();
+    for(Artifact a : artifacts) {
+      Artifact artifact;
+      //Unresolved artifacts have no file, like in the archiver they're ignored
+      if(a.getFile() != null && (a.getFile().isDirectory() || "pom.xml".equals(a.getFile().getName()))) {
+        artifact = new DefaultArtifact(a.getGroupId(), a.getArtifactId(), a.getVersion(), a.getScope(), a.getType(),
+            a.getClassifier(), a.getArtifactHandler());
+        File fakeFile = new File(FAKE_REPO, localRepo.pathOf(artifact));
+        ensureExists(fakeFile);
+        artifact.setFile(fakeFile);
+        fakeFiles.add(fakeFile);
+      } else {
+        artifact = a;
+      }
+      newArtifacts.add(artifact);
+    }
+
+    synchronized(cache) {
+      cache.put(project, new Entry(artifacts, newArtifacts, fakeFiles));
+    }
+    return newArtifacts;
+  }
+
+  static void remove(IProject project) {
+    synchronized(cache) {
+      cache.remove(project);
+    }
+  }
+
+  private static synchronized void ensureExists(File fakeFile) {
+    if(fakeFile.isFile()) {
+      return;
+    }
+    List<File> missingFolders = new ArrayList<File>();
+    for(File folder = fakeFile.getParentFile(); folder != null && !folder.exists(); folder = folder.getParentFile()) {
+      missingFolders.add(0, folder);
+    }
+    fakeFile.getParentFile().mkdirs();
+    try {
+      if(!fakeFile.createNewFile()) {
+        //Created concurrently by another VM sharing the tmp folder
+        return;
+      }
+    } catch(IOException ex) {
+      //The artifact will be missing from the Class-Path, the creation is attempted again on the next generation
+      return;
+    }
+    //Files registered last are deleted first
+    for(File folder : missingFolders) {
+      folder.deleteOnExit();
+    }
+    fakeFile.deleteOnExit();
+  }
+
+  private static class Entry {
+    final WeakReference<Set<Artifact>> artifacts;
+
+    final Set<Artifact> fixedArtifacts;
+
+    final List<File> fakeFiles;
+
+    Entry(Set<Artifact> artifacts, Set<Artifact> fixedArtifacts, List<File> fakeFiles) {
+      this.artifacts = new WeakReference<Set<Artifact>>(artifacts);
+      this.fixedArtifacts = fixedArtifacts;
+      this.fakeFiles = fakeFiles;
+    }
+  }
+}
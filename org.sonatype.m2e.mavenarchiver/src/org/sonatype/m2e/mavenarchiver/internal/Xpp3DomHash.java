@@ -0,0 +1,84 @@
+/*******************************************************************************
+ * Copyright (c) 2008 Sonatype, Inc.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************/
+
+package org.sonatype.m2e.mavenarchiver.internal;
+
+import java.util.Arrays;
+
+import org.codehaus.plexus.util.xml.Xpp3Dom;
+
+/**
+ * 64 bits structural hash of an Xpp3Dom subtree : element names, values, attributes (in any order) and children (in
+ * document order).<br/>
+ * Hashes are memoized by Xpp3Dom instance, as configuration trees of a given project state are never modified, so
+ * telling apart the configurations of 2 project states usually doesn't need to walk any tree. As hashes may collide,
+ * and a memoized tree could still be modified, they're only used to reject unequal trees, never to accept equal ones.
+ */
+class Xpp3DomHash {
+
+  private static final StructuralHash.Memo memo = new StructuralHash.Memo(256);
+
+  private Xpp3DomHash() {
+    // prevent instantiation.
+  }
+
+  /**
+   * @return the structural hash of the dom, 0 for null.
+   */
+  static long hash(Xpp3Dom dom) {
+    if(dom == null) {
+      return 0;
+    }
+    Long hash = memo.get(dom);
+    if(hash == null) {
+      hash = Long.valueOf(compute(StructuralHash.SEED, dom));
+      memo.put(dom, hash.longValue());
+    }
+    return hash.longValue();
+  }
+
+  /**
+   * @return true if both doms are null, or are structurally equal. Trees with different hashes are rejected without
+   *         being walked.
+   */
+  static boolean equals(Xpp3Dom dom, Xpp3Dom other) {
+    if(dom == other) {
+      return true;
+    }
+    if(dom == null || other == null) {
+      return false;
+    }
+    if(hash(dom) != hash(other)) {
+      return false;
+    }
+    //Matching hashes may still be a collision
+    return dom.equals(other);
+  }
+
+  private static long compute(long hash, Xpp3Dom dom) {
+    hash = StructuralHash.update(hash, dom.getName());
+    hash = StructuralHash.update(hash, dom.getValue());
+
+    String[] attributeNames = dom.getAttributeNames();
+    if(attributeNames.length > 1) {
+      attributeNames = attributeNames.clone();
+      Arrays.sort(attributeNames);
+    }
+    for(String name : attributeNames) {
+      hash = StructuralHash.update(hash, name);
+      hash = StructuralHash.update(hash, dom.getAttribute(name));
+    }
+
+    int childCount = dom.getChildCount();
+    hash = StructuralHash.update(hash, childCount);
+    for(int i = 0; i < childCount; i++ ) {
+      hash = compute(hash, dom.getChild(i));
+    }
+    return hash;
+  }
+}